@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.inject.Inject;
+import jakarta.persistence.PersistenceContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.lang.reflect.*;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Minimal stand-in for the CDI/EJB container, wiring the application classes for the benchmarks.
+ * Beans are singletons, created on first use:
+ * <ul>
+ *     <li>Fields annotated with {@link ConfigProperty} get the configured value, or else the default value</li>
+ *     <li>Other fields annotated with {@link Inject}, {@link Resource} or {@link PersistenceContext} get the bound
+ *     instance of their type, or else a (recursively wired) new instance of their class, or else (for interfaces)
+ *     a no-op stand-in (see {@link StandIns})</li>
+ *     <li>Methods annotated with {@link PostConstruct} are called after wiring, unless disabled for the class</li>
+ * </ul>
+ * Interceptors (e.g. for transactions) are not applied.
+ *
+ * @author Chris de Vreeze
+ */
+public final class BenchmarkBeans {
+
+    private final Map<Class<?>, Object> beans = new HashMap<>();
+    private final Map<String, String> configValues = new HashMap<>();
+    private final Set<Class<?>> withoutPostConstruct = new HashSet<>();
+
+    public <T> BenchmarkBeans bind(Class<T> type, T instance) {
+        beans.put(type, instance);
+        return this;
+    }
+
+    public BenchmarkBeans config(String name, String value) {
+        configValues.put(name, value);
+        return this;
+    }
+
+    /**
+     * Skips the PostConstruct methods of the given class, e.g. because they need JNDI.
+     */
+    public BenchmarkBeans withoutPostConstruct(Class<?> type) {
+        withoutPostConstruct.add(type);
+        return this;
+    }
+
+    public <T> T get(Class<T> type) {
+        Object bean = beans.get(type);
+        if (bean == null) {
+            bean = type.isInterface() ? StandIns.noOp(type) : create(type);
+            beans.put(type, bean);
+        }
+        return type.cast(bean);
+    }
+
+    private <T> T create(Class<T> type) {
+        try {
+            T bean = type.getDeclaredConstructor().newInstance();
+            // Registered before wiring, for (indirect) circular dependencies
+            beans.put(type, bean);
+
+            List<Class<?>> classes = new ArrayList<>();
+            for (Class<?> cls = type; cls != Object.class; cls = cls.getSuperclass()) {
+                classes.addFirst(cls);
+            }
+            for (Class<?> cls : classes) {
+                for (Field field : cls.getDeclaredFields()) {
+                    inject(bean, field);
+                }
+            }
+            for (Class<?> cls : classes) {
+                if (!withoutPostConstruct.contains(cls)) {
+                    callPostConstruct(bean, cls);
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create bean of " + type, e);
+        }
+    }
+
+    private void inject(Object bean, Field field) throws IllegalAccessException {
+        if (Modifier.isStatic(field.getModifiers())) {
+            return;
+        }
+        ConfigProperty configProperty = field.getAnnotation(ConfigProperty.class);
+        if (configProperty != null) {
+            field.setAccessible(true);
+            field.set(bean, convert(getConfigValue(configProperty), field.getGenericType()));
+        } else if (field.isAnnotationPresent(Inject.class) || field.isAnnotationPresent(Resource.class) ||
+                field.isAnnotationPresent(PersistenceContext.class)) {
+            field.setAccessible(true);
+            field.set(bean, get(field.getType()));
+        }
+    }
+
+    private static void callPostConstruct(Object bean, Class<?> cls) throws IllegalAccessException {
+        for (Method method : cls.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(PostConstruct.class)) {
+                method.setAccessible(true);
+                try {
+                    method.invoke(bean);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException("PostConstruct of " + cls + " failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private Optional<String> getConfigValue(ConfigProperty configProperty) {
+        String value = configValues.get(configProperty.name());
+        if (value != null) {
+            return Optional.of(value);
+        }
+        return Optional.of(configProperty.defaultValue()).filter(v -> !v.equals(ConfigProperty.UNCONFIGURED_VALUE));
+    }
+
+    private static Object convert(Optional<String> value, Type genericType) {
+        if (genericType instanceof ParameterizedType parameterizedType &&
+                parameterizedType.getRawType() == Optional.class) {
+            return value.map(v -> convert(v, (Class<?>) parameterizedType.getActualTypeArguments()[0]));
+        }
+        return value.map(v -> convert(v, (Class<?>) genericType)).orElse(null);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(String v, Class<?> type) {
+        return switch (type.getName()) {
+            case "java.lang.String" -> v;
+            case "int", "java.lang.Integer" -> Integer.valueOf(v);
+            case "long", "java.lang.Long" -> Long.valueOf(v);
+            case "double", "java.lang.Double" -> Double.valueOf(v);
+            case "boolean", "java.lang.Boolean" -> Boolean.valueOf(v);
+            case "java.time.Duration" -> Duration.parse(v);
+            case "java.util.List" -> List.of(v.split(","));
+            default -> {
+                if (type.isEnum()) {
+                    yield Enum.valueOf((Class<? extends Enum>) type, v);
+                }
+                throw new IllegalArgumentException("Unsupported config property type " + type);
+            }
+        };
+    }
+}
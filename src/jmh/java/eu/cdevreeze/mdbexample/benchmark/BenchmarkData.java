@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+
+import java.time.Instant;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+/**
+ * Deterministic test data for the benchmarks.
+ *
+ * @author Chris de Vreeze
+ */
+public final class BenchmarkData {
+
+    private static final char[] TEXT_CHARACTERS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ".toCharArray();
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns a pseudo-random text of the given length, the same for each call with the same length.
+     */
+    public static String text(int length) {
+        return text(length, length);
+    }
+
+    /**
+     * Returns a pseudo-random text of the given length, the same for each call with the same length and seed.
+     */
+    public static String text(int length, long seed) {
+        Random random = new Random(seed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = TEXT_CHARACTERS[random.nextInt(TEXT_CHARACTERS.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns a (non-last) page of "pageSize" messages with different texts of the given length, so that
+     * compressing the page is not unrealistically effective.
+     */
+    public static MessagePage page(int pageSize, int textLength) {
+        Instant timestamp = Instant.parse("2025-06-01T12:00:00.123Z");
+        ImmutableList<Message> messages = LongStream.rangeClosed(1, pageSize)
+                .mapToObj(id -> new Message(1_000_000L + id, timestamp.plusMillis(id), text(textLength, id)))
+                .collect(ImmutableList.toImmutableList());
+        return new MessagePage(messages, OptionalLong.of(messages.getLast().id()));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.Persistence;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * In-memory Derby database, accessed through EclipseLink outside the container, for the benchmarks that measure
+ * the JPA code paths themselves. Persistence unit "benchmark-unit" (see src/jmh/resources/META-INF/persistence.xml)
+ * creates the tables of the offline load test.
+ *
+ * @author Chris de Vreeze
+ */
+public final class InMemoryDatabase {
+
+    private InMemoryDatabase() {
+    }
+
+    /**
+     * Creates the entity manager factory of persistence unit "benchmark-unit", with the given extra properties.
+     * Each benchmark fork has its own (empty) database.
+     */
+    public static EntityManagerFactory createEntityManagerFactory(Map<String, String> properties) {
+        // Otherwise Derby writes its log file "derby.log" to the working directory
+        System.setProperty("derby.stream.error.file", "target/derby.log");
+        return Persistence.createEntityManagerFactory("benchmark-unit", properties);
+    }
+
+    /**
+     * Runs the given work in a resource-local transaction, and then clears the persistence context, like the
+     * transaction-scoped persistence context in the container.
+     */
+    public static <T> T inTransaction(EntityManager entityManager, Supplier<T> work) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        T result = work.get();
+        transaction.commit();
+        entityManager.clear();
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for a JPA EntityManager. Method "persist" assigns generated IDs, like a sequence generator
+ * would, but nothing is stored. Queries return no results.
+ *
+ * @author Chris de Vreeze
+ */
+public final class InMemoryEntityManager {
+
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong persistCount = new AtomicLong();
+
+    public EntityManager createEntityManager() {
+        return StandIns.proxy(EntityManager.class, this::invoke);
+    }
+
+    public long getPersistCount() {
+        return persistCount.get();
+    }
+
+    private Object invoke(Object proxy, Method method, Object[] args) throws IllegalAccessException {
+        if (method.getName().equals("persist")) {
+            persist(args[0]);
+            return null;
+        }
+        return StandIns.defaultResult(proxy, method, args);
+    }
+
+    private void persist(Object entity) throws IllegalAccessException {
+        persistCount.incrementAndGet();
+        for (Field field : entity.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Id.class) && field.isAnnotationPresent(GeneratedValue.class)) {
+                field.setAccessible(true);
+                if (field.get(entity) == null) {
+                    field.set(entity, idSequence.incrementAndGet());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import jakarta.jms.*;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory stand-ins for the JMS API: a JMSContext whose producers only count the sent messages, and text
+ * messages keeping their text, headers and properties in memory.
+ *
+ * @author Chris de Vreeze
+ */
+public final class InMemoryJms {
+
+    private final LongAdder sentCount = new LongAdder();
+
+    public JMSContext createContext() {
+        return StandIns.proxy(JMSContext.class, this::invokeContext);
+    }
+
+    public TextMessage createTextMessage(String text) {
+        TextMessageState state = new TextMessageState();
+        state.text = text;
+        return StandIns.proxy(TextMessage.class, state::invoke);
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    private Object invokeContext(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "createProducer" -> StandIns.proxy(JMSProducer.class, this::invokeProducer);
+            case "createTextMessage" -> createTextMessage((args == null) ? null : (String) args[0]);
+            default -> StandIns.defaultResult(proxy, method, args);
+        };
+    }
+
+    private Object invokeProducer(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("send")) {
+            sentCount.increment();
+            return proxy;
+        }
+        return StandIns.defaultResult(proxy, method, args);
+    }
+
+    private static final class TextMessageState {
+
+        private final Map<String, Object> properties = new HashMap<>();
+        private String text;
+        private String messageId;
+        private long timestamp;
+        private boolean redelivered;
+
+        private Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            return switch (name) {
+                case "getText" -> text;
+                case "setText" -> {
+                    text = (String) args[0];
+                    yield null;
+                }
+                case "getJMSMessageID" -> messageId;
+                case "setJMSMessageID" -> {
+                    messageId = (String) args[0];
+                    yield null;
+                }
+                case "getJMSTimestamp" -> timestamp;
+                case "setJMSTimestamp" -> {
+                    timestamp = (Long) args[0];
+                    yield null;
+                }
+                case "getJMSRedelivered" -> redelivered;
+                case "setJMSRedelivered" -> {
+                    redelivered = (Boolean) args[0];
+                    yield null;
+                }
+                case "propertyExists" -> properties.containsKey((String) args[0]);
+                case "getPropertyNames" -> Collections.enumeration(properties.keySet());
+                case "clearProperties" -> {
+                    properties.clear();
+                    yield null;
+                }
+                case "getBody" -> text;
+                case "isBodyAssignableTo" -> ((Class<?>) args[0]).isAssignableFrom(String.class);
+                default -> {
+                    if (name.startsWith("set") && name.endsWith("Property")) {
+                        properties.put((String) args[0], args[1]);
+                        yield null;
+                    } else if (name.startsWith("get") && name.endsWith("Property")) {
+                        yield getProperty((String) args[0], method.getReturnType());
+                    }
+                    yield StandIns.defaultResult(proxy, method, args);
+                }
+            };
+        }
+
+        private Object getProperty(String propertyName, Class<?> type) {
+            Object value = properties.get(propertyName);
+            if (type == Object.class) {
+                return value;
+            } else if (type == String.class) {
+                return (value == null) ? null : String.valueOf(value);
+            } else if (value == null || value instanceof String) {
+                // Conversions as prescribed by the JMS spec, e.g. a NumberFormatException for a missing int property
+                String stringValue = (String) value;
+                return switch (type.getName()) {
+                    case "boolean" -> Boolean.valueOf(stringValue);
+                    case "byte" -> Byte.valueOf(stringValue);
+                    case "short" -> Short.valueOf(stringValue);
+                    case "int" -> Integer.valueOf(stringValue);
+                    case "long" -> Long.valueOf(stringValue);
+                    case "float" -> Float.valueOf(stringValue);
+                    default -> Double.valueOf(stringValue);
+                };
+            } else {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for the JTA TransactionSynchronizationRegistry, for one thread. A "transaction" is started
+ * with method "begin", and completed with method "complete", which runs the registered synchronizations.
+ *
+ * @author Chris de Vreeze
+ */
+public final class InMemoryTransactionSynchronizationRegistry implements TransactionSynchronizationRegistry {
+
+    private final Map<Object, Object> resources = new HashMap<>();
+    private final List<Synchronization> synchronizations = new ArrayList<>();
+    private Object transactionKey;
+    private boolean rollbackOnly;
+    private long transactionCount;
+
+    public void begin() {
+        transactionCount += 1;
+        transactionKey = transactionCount;
+        rollbackOnly = false;
+    }
+
+    /**
+     * Completes the current transaction, committing it unless it was marked for rollback, and returns the outcome
+     * (a {@link Status} value).
+     */
+    public int complete() {
+        int status = rollbackOnly ? Status.STATUS_ROLLEDBACK : Status.STATUS_COMMITTED;
+        if (!rollbackOnly) {
+            synchronizations.forEach(Synchronization::beforeCompletion);
+        }
+        transactionKey = null;
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        synchronizations.clear();
+        resources.clear();
+        return status;
+    }
+
+    @Override
+    public Object getTransactionKey() {
+        return transactionKey;
+    }
+
+    @Override
+    public void putResource(Object key, Object value) {
+        checkActive();
+        resources.put(key, value);
+    }
+
+    @Override
+    public Object getResource(Object key) {
+        checkActive();
+        return resources.get(key);
+    }
+
+    @Override
+    public void registerInterposedSynchronization(Synchronization sync) {
+        checkActive();
+        synchronizations.add(sync);
+    }
+
+    @Override
+    public int getTransactionStatus() {
+        if (transactionKey == null) {
+            return Status.STATUS_NO_TRANSACTION;
+        }
+        return rollbackOnly ? Status.STATUS_MARKED_ROLLBACK : Status.STATUS_ACTIVE;
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        checkActive();
+        rollbackOnly = true;
+    }
+
+    @Override
+    public boolean getRollbackOnly() {
+        checkActive();
+        return rollbackOnly;
+    }
+
+    private void checkActive() {
+        if (transactionKey == null) {
+            throw new IllegalStateException("No active transaction");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Factory of in-memory stand-ins for container-provided interfaces (JMS, JPA, JTA, MicroProfile Metrics etc.),
+ * implemented as dynamic proxies. Method "noOp" returns a stand-in doing nothing, whose methods return "empty"
+ * values: zero, false, empty optionals and collections, the stand-in itself for fluent methods, and other no-op
+ * stand-ins for interface return types. More specific stand-ins delegate to method "defaultResult" for the methods
+ * they do not care about.
+ *
+ * @author Chris de Vreeze
+ */
+public final class StandIns {
+
+    private StandIns() {
+    }
+
+    public static <T> T noOp(Class<T> type) {
+        return proxy(type, StandIns::defaultResult);
+    }
+
+    public static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StandIns.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Returns the "empty" result of the given method called on the given stand-in.
+     */
+    public static Object defaultResult(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "StandIn[" + proxy.getClass().getInterfaces()[0].getSimpleName() + "]";
+            };
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            return null;
+        } else if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == char.class) {
+            return '\0';
+        } else if (returnType.isPrimitive()) {
+            // The proxy machinery requires the exact wrapper type of a primitive return type
+            return switch (returnType.getName()) {
+                case "byte" -> (byte) 0;
+                case "short" -> (short) 0;
+                case "int" -> 0;
+                case "long" -> 0L;
+                case "float" -> 0F;
+                default -> 0D;
+            };
+        } else if (returnType == Optional.class) {
+            return Optional.empty();
+        } else if (returnType == OptionalLong.class) {
+            return OptionalLong.empty();
+        } else if (returnType == List.class || returnType == Collection.class || returnType == Iterable.class) {
+            return List.of();
+        } else if (returnType == Set.class) {
+            return Set.of();
+        } else if (returnType == Map.class) {
+            return Map.of();
+        } else if (returnType == Stream.class) {
+            return Stream.empty();
+        } else if (returnType.isInstance(proxy)) {
+            // Fluent API
+            return proxy;
+        } else if (returnType.isInterface()) {
+            return noOp(returnType);
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.cdevreeze.mdbexample.dao;
+
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkBeans;
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkData;
+import eu.cdevreeze.mdbexample.benchmark.InMemoryDatabase;
+import eu.cdevreeze.mdbexample.entity.MessageEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sessions.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the number of messages inserted per second by MessageDao.createMessage, using the real JPA provider
+ * (EclipseLink, outside the container) and an in-memory Derby database instead of PostgreSQL (see
+ * {@link InMemoryDatabase}). It compares ID
+ * allocation size 1, which costs a sequence round trip per insert (like the ID generation before pooled allocation),
+ * with the allocation size of MessageEntity, for one message per transaction and for 100 messages per transaction.
+ * <p>
+ * Derby runs in the benchmark JVM, so a database round trip is much cheaper than over the network. The differences
+ * are therefore lower bounds of those against PostgreSQL (see the offline load test for end-to-end throughput).
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageInsertBenchmark {
+
+    private static final int MESSAGES_PER_BATCH = 100;
+
+    private static final int MESSAGE_SIZE = 256;
+
+    @Param({"1", "" + MessageEntity.ID_ALLOCATION_SIZE})
+    private int idAllocationSize;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private MessageDao messageDao;
+    private String messageText;
+
+    @Setup
+    public void setUp() {
+        IdAllocationSizeCustomizer.allocationSize = idAllocationSize;
+        entityManagerFactory = InMemoryDatabase.createEntityManagerFactory(
+                Map.of("eclipselink.session.customizer", IdAllocationSizeCustomizer.class.getName()));
+        entityManager = entityManagerFactory.createEntityManager();
+
+        messageDao = new BenchmarkBeans().bind(EntityManager.class, entityManager).get(MessageDao.class);
+        messageText = BenchmarkData.text(MESSAGE_SIZE);
+    }
+
+    @Setup(Level.Iteration)
+    public void deleteMessages() {
+        // Keeps the in-memory database from growing during the run
+        InMemoryDatabase.inTransaction(
+                entityManager, () -> entityManager.createQuery("DELETE FROM Message m").executeUpdate());
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    public MessageEntity insertOnePerTransaction() {
+        return InMemoryDatabase.inTransaction(entityManager, this::createMessage);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_BATCH)
+    public MessageEntity insertBatchPerTransaction() {
+        return InMemoryDatabase.inTransaction(entityManager, () -> {
+            MessageEntity message = null;
+            for (int i = 0; i < MESSAGES_PER_BATCH; i++) {
+                message = createMessage();
+            }
+            return message;
+        });
+    }
+
+    private MessageEntity createMessage() {
+        return messageDao.createMessage(new MessageEntity(null, LocalDateTime.now(), messageText));
+    }
+
+    /**
+     * Overrides the allocation size of the message ID generator. The database sequence keeps its increment of
+     * ID_ALLOCATION_SIZE, which only leaves gaps between the IDs if the allocation size is 1.
+     * It is instantiated by EclipseLink, so the allocation size is passed in a static field.
+     */
+    public static class IdAllocationSizeCustomizer implements SessionCustomizer {
+
+        static volatile int allocationSize = MessageEntity.ID_ALLOCATION_SIZE;
+
+        @Override
+        public void customize(Session session) {
+            // Sequences are named after the database sequence
+            session.getProject().getLogin().getSequence("message_id_seq").setPreallocationSize(allocationSize);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.mdb;
+
+import eu.cdevreeze.mdbexample.benchmark.*;
+import jakarta.ejb.MessageDrivenContext;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.TextMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of method "onMessage" of both message listeners, including the after-completion callbacks of the
+ * transaction, with in-memory stand-ins for JMS, JPA and JTA (see {@link BenchmarkBeans}). So it measures the
+ * CPU time and allocation of the application code itself, without any I/O. Run with "-prof gc" for the allocation
+ * per operation.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageListenerBenchmark {
+
+    // Strongly referenced, so the level is not lost when the logger is garbage collected
+    private static final Logger applicationLogger = Logger.getLogger("eu.cdevreeze.mdbexample");
+
+    @Param({"256", "4096"})
+    private int messageSize;
+
+    @Param({"XA", "OUTBOX"})
+    private String forwardingMode;
+
+    private InMemoryTransactionSynchronizationRegistry registry;
+    private MessageStoringAndForwardingMessageListener storingListener;
+    private MessageForwardingMessageListener forwardingListener;
+    private TextMessage message;
+    private long messageCount;
+
+    @Setup
+    public void setUp() {
+        // The listeners log each message at level INFO; the cost of building the log messages is still measured
+        applicationLogger.setLevel(Level.WARNING);
+
+        registry = new InMemoryTransactionSynchronizationRegistry();
+        InMemoryJms jms = new InMemoryJms();
+        MessageDrivenContext messageDrivenContext = StandIns.proxy(
+                MessageDrivenContext.class,
+                (proxy, method, args) -> {
+                    if (method.getName().equals("setRollbackOnly")) {
+                        registry.setRollbackOnly();
+                        return null;
+                    }
+                    return StandIns.defaultResult(proxy, method, args);
+                });
+
+        BenchmarkBeans beans = new BenchmarkBeans()
+                .bind(TransactionSynchronizationRegistry.class, registry)
+                .bind(JMSContext.class, jms.createContext())
+                .bind(EntityManager.class, new InMemoryEntityManager().createEntityManager())
+                .bind(MessageDrivenContext.class, messageDrivenContext)
+                .config("mdbexample.forwarding.mode", forwardingMode)
+                // Its PostConstruct method looks up the dead-letter queue in JNDI
+                .withoutPostConstruct(PoisonMessageHandler.class);
+        storingListener = beans.get(MessageStoringAndForwardingMessageListener.class);
+        forwardingListener = beans.get(MessageForwardingMessageListener.class);
+
+        message = jms.createTextMessage(BenchmarkData.text(messageSize));
+    }
+
+    @Benchmark
+    public int storingListener() throws JMSException {
+        prepareNextMessage();
+        registry.begin();
+        storingListener.onMessage(message);
+        return registry.complete();
+    }
+
+    @Benchmark
+    public int forwardingListener() throws JMSException {
+        prepareNextMessage();
+        registry.begin();
+        forwardingListener.onMessage(message);
+        return registry.complete();
+    }
+
+    private void prepareNextMessage() throws JMSException {
+        // A new message ID for each message, so it is not skipped as a duplicate
+        messageCount += 1;
+        message.setJMSMessageID("ID:" + messageCount);
+        message.setJMSTimestamp(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.cdevreeze.mdbexample.routing;
+
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkBeans;
+import eu.cdevreeze.mdbexample.benchmark.InMemoryJms;
+import eu.cdevreeze.mdbexample.benchmark.StandIns;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.Queue;
+import jakarta.jms.TextMessage;
+import org.eclipse.microprofile.config.Config;
+import org.openjdk.jmh.annotations.*;
+
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of the routing decisions of the MessageRouter, as a function of the number of routing rules and the
+ * kind of their conditions. All rules are evaluated for each message, and only the last rule matches, so the cost
+ * grows with the number of rules. The JSON conditions parse the message text at most once per message, whatever the
+ * number of rules. Run with "-prof gc" for the allocation per routing decision.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRouterBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int ruleCount;
+
+    @Param({"property", "text-prefix", "json"})
+    private String conditionType;
+
+    private MessageRouter messageRouter;
+    private JMSContext jmsContext;
+    private TextMessage message;
+
+    /**
+     * JNDI stand-in, returning a queue for each name looked up (see RoutingRule.fromConfig).
+     */
+    public static class QueueContextFactory implements InitialContextFactory {
+
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) {
+            return StandIns.proxy(Context.class, (proxy, method, args) -> {
+                if (method.getName().equals("lookup")) {
+                    String name = String.valueOf(args[0]);
+                    return StandIns.proxy(Queue.class, (queue, queueMethod, queueArgs) ->
+                            queueMethod.getName().equals("getQueueName") ?
+                                    name :
+                                    StandIns.defaultResult(queue, queueMethod, queueArgs));
+                }
+                return StandIns.defaultResult(proxy, method, args);
+            });
+        }
+    }
+
+    @Setup
+    public void setUp() throws JMSException {
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, QueueContextFactory.class.getName());
+
+        List<String> ruleNames = IntStream.range(0, ruleCount).mapToObj(i -> "rule" + i).toList();
+        Map<String, String> configValues = new HashMap<>();
+        for (int i = 0; i < ruleCount; i++) {
+            String prefix = "mdbexample.routing.rule.rule" + i + ".";
+            configValues.put(prefix + "destination", "jms/RoutedQueue" + i);
+            // Only the last rule matches the message
+            String value = (i == ruleCount - 1) ? "eu" : "region" + i;
+            switch (conditionType) {
+                case "property" -> {
+                    configValues.put(prefix + "property", "region");
+                    configValues.put(prefix + "property-value", value);
+                }
+                case "text-prefix" -> configValues.put(prefix + "text-prefix", "{\"region\": \"" + value + "\"");
+                default -> {
+                    configValues.put(prefix + "json-field", "/region");
+                    configValues.put(prefix + "json-value", value);
+                }
+            }
+        }
+        Config config = StandIns.proxy(Config.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getOptionalValues" -> Optional.of(ruleNames);
+            case "getOptionalValue" -> Optional.ofNullable(configValues.get(String.valueOf(args[0])));
+            case "getValue" -> Optional.ofNullable(configValues.get(String.valueOf(args[0])))
+                    .orElseThrow(() -> new NoSuchElementException(String.valueOf(args[0])));
+            default -> StandIns.defaultResult(proxy, method, args);
+        });
+
+        messageRouter = new BenchmarkBeans().bind(Config.class, config).get(MessageRouter.class);
+
+        InMemoryJms jms = new InMemoryJms();
+        jmsContext = jms.createContext();
+        message = jms.createTextMessage("{\"region\": \"eu\", \"order\": {\"id\": 12345, \"status\": \"shipped\"}}");
+        message.setStringProperty("region", "eu");
+    }
+
+    @Benchmark
+    public List<Queue> selectDestinations() throws JMSException {
+        return messageRouter.selectDestinations(message);
+    }
+
+    @Benchmark
+    public int route() throws JMSException {
+        return messageRouter.route(jmsContext, message);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkBeans;
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkData;
+import eu.cdevreeze.mdbexample.benchmark.InMemoryDatabase;
+import eu.cdevreeze.mdbexample.dao.MessageDao;
+import eu.cdevreeze.mdbexample.entity.MessageEntity;
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.MessageData;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of the conversions between MessageData, MessageEntity and Message records in MessageService.
+ * <p>
+ * It also compares the read paths for a page of messages, using EclipseLink on an in-memory Derby database
+ * (see {@link InMemoryDatabase}): the projection query of MessageDao, which creates Message records directly,
+ * versus reading managed MessageEntity objects and converting them with "convertToRecord", which also registers
+ * them in the persistence context and checks them for changes at commit. Run with "-prof gc" for the allocation
+ * per operation.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"256", "4096"})
+    private int messageSize;
+
+    private MessageData messageData;
+    private MessageEntity messageEntity;
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkData.text(messageSize);
+        messageData = new MessageData(Instant.parse("2025-06-01T12:00:00.123Z"), text);
+        messageEntity = new MessageEntity(1L, LocalDateTime.parse("2025-06-01T12:00:00.123"), text);
+    }
+
+    @Benchmark
+    public MessageEntity convertToEntity() {
+        return MessageService.convertToEntity(messageData);
+    }
+
+    @Benchmark
+    public Message convertToRecord() {
+        return MessageService.convertToRecord(messageEntity);
+    }
+
+    @Benchmark
+    public List<Message> readPageAsProjection(MessageTable messageTable) {
+        return InMemoryDatabase.inTransaction(
+                messageTable.entityManager,
+                () -> messageTable.messageDao.findMessages(0L, Optional.empty(), Optional.empty(), PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<Message> readPageAsEntities(MessageTable messageTable) {
+        return InMemoryDatabase.inTransaction(
+                messageTable.entityManager,
+                () -> messageTable.entityManager
+                        .createQuery("SELECT m FROM Message m WHERE m.id > :afterId ORDER BY m.id", MessageEntity.class)
+                        .setParameter("afterId", 0L)
+                        .setMaxResults(PAGE_SIZE)
+                        .getResultList()
+                        .stream()
+                        .map(MessageService::convertToRecord)
+                        .toList());
+    }
+
+    /**
+     * Message table with one page of messages, only set up for the benchmarks that read it.
+     */
+    @State(Scope.Benchmark)
+    public static class MessageTable {
+
+        private EntityManagerFactory entityManagerFactory;
+        private EntityManager entityManager;
+        private MessageDao messageDao;
+
+        @Setup
+        public void setUp(BenchmarkParams benchmarkParams) {
+            String text = BenchmarkData.text(Integer.parseInt(benchmarkParams.getParam("messageSize")));
+            entityManagerFactory = InMemoryDatabase.createEntityManagerFactory(Map.of());
+            entityManager = entityManagerFactory.createEntityManager();
+            messageDao = new BenchmarkBeans().bind(EntityManager.class, entityManager).get(MessageDao.class);
+
+            LocalDateTime timestamp = LocalDateTime.parse("2025-06-01T12:00:00.123");
+            InMemoryDatabase.inTransaction(entityManager, () -> messageDao.createMessages(
+                    IntStream.range(0, PAGE_SIZE)
+                            .mapToObj(i -> new MessageEntity(null, timestamp.plusSeconds(i), text))
+                            .toList()));
+        }
+
+        @TearDown
+        public void tearDown() {
+            entityManager.close();
+            entityManagerFactory.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkData;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import jakarta.json.Json;
+import jakarta.json.JsonWriter;
+import jakarta.json.JsonWriterFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Benchmark comparing the two response formats of a page of messages: JSON (as built by MessageResource) and
+ * the compact binary message records (see MessageRecordFormat), each with and without gzip content encoding
+ * (see CompressionWriterInterceptor). Besides the serialization time, the auxiliary counter "bytesPerMessage"
+ * reports the response size per message.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRecordFormatBenchmark {
+
+    @Param({"100", "1000"})
+    private int pageSize;
+
+    @Param({"256", "4096"})
+    private int messageSize;
+
+    @Param({"identity", "gzip"})
+    private String contentEncoding;
+
+    private MessagePage page;
+    private MessageRecordFormat messageRecordFormat;
+    private JsonWriterFactory jsonWriterFactory;
+
+    /**
+     * Response size, reported per iteration (the value is the same in each operation).
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ResponseSize {
+
+        public double bytesPerMessage;
+    }
+
+    @State(Scope.Thread)
+    public static class ResponseBuffer {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 20);
+    }
+
+    @Setup
+    public void setUp() {
+        page = BenchmarkData.page(pageSize, messageSize);
+        messageRecordFormat = new MessageRecordFormat();
+        // Like the JAX-RS runtime, which creates the JSON-P writer factory once
+        jsonWriterFactory = Json.createWriterFactory(Map.of());
+    }
+
+    @Benchmark
+    public int json(ResponseBuffer buffer, ResponseSize size) throws IOException {
+        ByteArrayOutputStream output = startResponse(buffer);
+        try (OutputStream entityStream = createEntityStream(output);
+             JsonWriter writer = jsonWriterFactory.createWriter(entityStream)) {
+            writer.write(MessageResource.convertToJson(page));
+        }
+        return endResponse(output, size);
+    }
+
+    @Benchmark
+    public int records(ResponseBuffer buffer, ResponseSize size) throws IOException {
+        ByteArrayOutputStream output = startResponse(buffer);
+        try (OutputStream entityStream = createEntityStream(output)) {
+            messageRecordFormat.writeTo(
+                    page,
+                    MessagePage.class,
+                    MessagePage.class,
+                    null,
+                    MessageRecordFormat.APPLICATION_MESSAGE_RECORDS_TYPE,
+                    null,
+                    entityStream);
+        }
+        return endResponse(output, size);
+    }
+
+    private static ByteArrayOutputStream startResponse(ResponseBuffer buffer) {
+        buffer.output.reset();
+        return buffer.output;
+    }
+
+    private OutputStream createEntityStream(ByteArrayOutputStream output) throws IOException {
+        return contentEncoding.equals("gzip") ? new GZIPOutputStream(output, 8192) : output;
+    }
+
+    private int endResponse(ByteArrayOutputStream output, ResponseSize size) {
+        size.bytesPerMessage = (double) output.size() / pageSize;
+        return output.size();
+    }
+}
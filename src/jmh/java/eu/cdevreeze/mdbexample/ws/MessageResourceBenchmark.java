@@ -0,0 +1,68 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import eu.cdevreeze.mdbexample.benchmark.BenchmarkData;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of building (and writing) the JSON representation of a page of messages in MessageResource.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageResourceBenchmark {
+
+    @Param({"100", "1000"})
+    private int pageSize;
+
+    @Param({"256", "4096"})
+    private int messageSize;
+
+    private MessagePage page;
+
+    @Setup
+    public void setUp() {
+        page = BenchmarkData.page(pageSize, messageSize);
+    }
+
+    @Benchmark
+    public JsonObject buildJson() {
+        return MessageResource.convertToJson(page);
+    }
+
+    @Benchmark
+    public JsonObject buildAndWriteJson() {
+        JsonObject json = MessageResource.convertToJson(page);
+        try (JsonWriter writer = Json.createWriter(OutputStream.nullOutputStream())) {
+            writer.write(json);
+        }
+        return json;
+    }
+}
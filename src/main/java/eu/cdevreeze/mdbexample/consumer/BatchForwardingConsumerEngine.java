@@ -0,0 +1,288 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.consumer;
+
+import eu.cdevreeze.mdbexample.mdb.PoisonMessageHandler;
+import eu.cdevreeze.mdbexample.routing.MessageRouter;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.Startup;
+import jakarta.inject.Inject;
+import jakarta.jms.*;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional alternative to MessageForwardingMessageListener, for pure forwarding from one queue to another.
+ * Instead of one container-managed transaction per message, each consumer receives up to "batch-size" messages
+ * (or as many as arrive within "max-wait" after the first one) in a locally transacted JMS session, forwards
+ * them all, and commits once. So the commit overhead is shared by the whole batch. There is no database
+ * involved, so there is no need for a distributed transaction either.
+ * <p>
+ * The consumers run on Java 21 virtual threads. They are started at application startup, if enabled through
+ * MicroProfile Config property "mdbexample.batch-forwarder.enabled". To replace the message-driven bean for the
+ * same source queue, switch off its activation spec in server.xml (server variable
+ * "mdbexample.forwarding-listener.auto-start"). Like that message-driven bean, it also sends the messages to the
+ * destinations selected by the MessageRouter, if any.
+ * <p>
+ * If forwarding a batch fails, the batch is rolled back, and the consumer pauses ("rollback-delay", doubling per
+ * consecutive failure up to "max-rollback-delay") before receiving again. The redelivered messages are then
+ * forwarded one per transaction, so that a poison message does not hold back the rest of its batch. Messages that
+ * reached the maximum delivery count are sent to the dead-letter queue by the PoisonMessageHandler, like in the
+ * message-driven beans.
+ * <p>
+ * Note that the consumers are not container-managed threads, so they cannot use JTA transactions or other
+ * container services. They only use the JMS connection factory.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class BatchForwardingConsumerEngine {
+
+    private static final Logger logger = Logger.getLogger(BatchForwardingConsumerEngine.class.getName());
+
+    // Bounds the time a consumer blocks waiting for the first message of a batch, so it notices a shutdown
+    private static final long POLL_TIMEOUT_MILLIS = 1000L;
+
+    private static final long RECONNECT_DELAY_MILLIS = 5000L;
+
+    private static final String LISTENER_NAME = BatchForwardingConsumerEngine.class.getSimpleName();
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.source-queue", defaultValue = "jms/MdbExampleDummyQueue")
+    private String sourceQueueName;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.target-queue", defaultValue = "jms/MdbExampleCopiedDummyQueue")
+    private String targetQueueName;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.batch-size", defaultValue = "100")
+    private int batchSize;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.max-wait", defaultValue = "PT0.05S")
+    private Duration maxWait;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.consumers", defaultValue = "4")
+    private int consumerCount;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.rollback-delay", defaultValue = "PT1S")
+    private Duration rollbackDelay;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.batch-forwarder.max-rollback-delay", defaultValue = "PT30S")
+    private Duration maxRollbackDelay;
+
+    @Resource(lookup = "jms/connectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private MessageRouter messageRouter;
+
+    @Inject
+    private PoisonMessageHandler poisonMessageHandler;
+
+    private final List<Thread> consumerThreads = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    private Counter forwardedCounter;
+    private Counter deadLetteredCounter;
+    private Counter rollbackCounter;
+    private Histogram batchSizeHistogram;
+
+    void onStartup(@Observes Startup event) throws NamingException {
+        if (!enabled) {
+            return;
+        }
+
+        Queue sourceQueue = InitialContext.doLookup(sourceQueueName);
+        Queue targetQueue = InitialContext.doLookup(targetQueueName);
+
+        forwardedCounter = metricRegistry.counter("batchForwarder.forwarded");
+        deadLetteredCounter = metricRegistry.counter("batchForwarder.deadLettered");
+        rollbackCounter = metricRegistry.counter("batchForwarder.rollbacks");
+        batchSizeHistogram = metricRegistry.histogram("batchForwarder.batchSize");
+
+        running = true;
+        for (int i = 0; i < consumerCount; i++) {
+            consumerThreads.add(
+                    Thread.ofVirtual()
+                            .name("batch-forwarder-" + i)
+                            .start(() -> runConsumer(sourceQueue, targetQueue)));
+        }
+
+        logger.info("Started " + consumerCount + " batch forwarding consumer(s) from " + sourceQueueName +
+                " to " + targetQueueName);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread thread : consumerThreads) {
+            thread.join(2 * POLL_TIMEOUT_MILLIS);
+        }
+    }
+
+    private void runConsumer(Queue sourceQueue, Queue targetQueue) {
+        while (running) {
+            try (JMSContext context = connectionFactory.createContext(JMSContext.SESSION_TRANSACTED);
+                 JMSConsumer consumer = context.createConsumer(sourceQueue)) {
+                JMSProducer producer = context.createProducer();
+                // After a rollback, the redelivered messages are forwarded one at a time
+                int singleMessagesToGo = 0;
+                int consecutiveRollbacks = 0;
+
+                while (running) {
+                    List<Message> batch = receiveBatch(consumer, (singleMessagesToGo > 0) ? 1 : batchSize);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                    if (forwardBatch(context, producer, targetQueue, batch)) {
+                        singleMessagesToGo = Math.max(singleMessagesToGo - batch.size(), 0);
+                        consecutiveRollbacks = 0;
+                    } else {
+                        singleMessagesToGo = Math.max(singleMessagesToGo, batch.size());
+                        consecutiveRollbacks += 1;
+                        pause(getRollbackDelay(consecutiveRollbacks));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Including JMSRuntimeException; any other exception must not silently end this consumer either
+                logger.log(Level.WARNING, "Batch forwarding consumer failed. Reconnecting.", e);
+                pause(Duration.ofMillis(RECONNECT_DELAY_MILLIS));
+            }
+        }
+    }
+
+    private List<Message> receiveBatch(JMSConsumer consumer, int batchSize) {
+        List<Message> batch = new ArrayList<>(batchSize);
+
+        Message firstMessage = consumer.receive(POLL_TIMEOUT_MILLIS);
+        if (firstMessage == null) {
+            return batch;
+        }
+        batch.add(firstMessage);
+
+        long deadlineNanos = System.nanoTime() + maxWait.toNanos();
+        while (batch.size() < batchSize) {
+            long remainingMillis = Duration.ofNanos(deadlineNanos - System.nanoTime()).toMillis();
+            // Mind that receive(0) would block indefinitely
+            Message message = (remainingMillis > 0) ? consumer.receive(remainingMillis) : consumer.receiveNoWait();
+            if (message == null) {
+                break;
+            }
+            batch.add(message);
+        }
+        return batch;
+    }
+
+    /**
+     * Forwards the batch in one local transaction, returning true if it has been committed, and false if it has
+     * been rolled back. Messages that reached the maximum delivery count are dead-lettered instead.
+     */
+    private boolean forwardBatch(JMSContext context, JMSProducer producer, Queue targetQueue, List<Message> batch) {
+        try {
+            List<Message> forwardedMessages = new ArrayList<>(batch.size());
+            for (Message message : batch) {
+                if (poisonMessageHandler.isPoisonMessage(message)) {
+                    logger.warning("Moving poison message " + message.getJMSMessageID() + " to the dead-letter queue");
+                    poisonMessageHandler.sendToDeadLetterQueue(context, message, LISTENER_NAME);
+                } else {
+                    producer.send(targetQueue, message);
+                    forwardedMessages.add(message);
+                }
+            }
+            routeBatch(producer, forwardedMessages);
+            context.commit();
+
+            forwardedCounter.inc(forwardedMessages.size());
+            deadLetteredCounter.inc(batch.size() - forwardedMessages.size());
+            batchSizeHistogram.update(batch.size());
+            return true;
+        } catch (RuntimeException | JMSException e) {
+            // The received messages go back to the queue, to be redelivered
+            logger.log(Level.WARNING, "Forwarding batch of " + batch.size() + " message(s) failed. Rolling back.", e);
+            batch.forEach(message -> poisonMessageHandler.recordFailure(message, e));
+            context.rollback();
+            rollbackCounter.inc();
+            return false;
+        }
+    }
+
+    /**
+     * Sends the messages of the batch to the destinations selected by the MessageRouter, if any. The sends are
+     * grouped per destination (keeping the message order per destination), in the same local transaction.
+     */
+    private void routeBatch(JMSProducer producer, List<Message> batch) throws JMSException {
+        if (!messageRouter.hasRules()) {
+            return;
+        }
+
+        Map<Queue, List<Message>> messagesPerDestination = new LinkedHashMap<>();
+        for (Message message : batch) {
+            for (Queue destination : messageRouter.selectDestinations(message)) {
+                messagesPerDestination.computeIfAbsent(destination, d -> new ArrayList<>()).add(message);
+            }
+        }
+
+        for (Map.Entry<Queue, List<Message>> entry : messagesPerDestination.entrySet()) {
+            for (Message message : entry.getValue()) {
+                producer.send(entry.getKey(), message);
+            }
+        }
+    }
+
+    private Duration getRollbackDelay(int consecutiveRollbacks) {
+        // Doubling per consecutive rollback, with the shift bounded to prevent overflow
+        Duration delay = rollbackDelay.multipliedBy(1L << Math.min(consecutiveRollbacks - 1, 20));
+        return (delay.compareTo(maxRollbackDelay) > 0) ? maxRollbackDelay : delay;
+    }
+
+    private void pause(Duration delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -17,11 +17,20 @@
 package eu.cdevreeze.mdbexample.dao;
 
 import eu.cdevreeze.mdbexample.entity.MessageEntity;
+import eu.cdevreeze.mdbexample.model.Message;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.eclipse.persistence.queries.ScrollableCursor;
 
-import java.util.List;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Message DAO, implemented using JPA.
@@ -35,21 +44,170 @@ public class MessageDao {
     // That is, it participates in the current JTA transaction.
     // See https://jakarta.ee/specifications/persistence/3.2/jakarta-persistence-spec-3.2#controlling-transactions.
 
+    // Number of entities persisted before flushing and clearing the persistence context in bulk inserts.
+    // It matches the "eclipselink.jdbc.batch-writing.size" in persistence.xml, so each flush is one JDBC batch.
+    private static final int BATCH_SIZE = 1000;
+
+    // Upper bound on the duration of one full-text search query, protecting the database from expensive searches
+    private static final int SEARCH_TIMEOUT_MILLIS = 5000;
+
     @PersistenceContext(name = "jpa-unit")
     private EntityManager entityManager;
 
     public MessageEntity createMessage(MessageEntity message) {
+        // The ID is assigned by persist, from the pre-allocated sequence values, so no flush is needed here.
+        // The INSERT itself is executed when the transaction commits (or at an earlier flush).
         entityManager.persist(message);
-        entityManager.flush();
         return message;
     }
 
-    public MessageEntity findMessage(long id) {
-        return entityManager.find(MessageEntity.class, id);
+    /**
+     * Persists the given messages, flushing them in JDBC batches of at most {@code BATCH_SIZE} rows.
+     * After each flush the persistence context is cleared, so it does not grow with the size of the
+     * input. The returned entities are therefore detached, but they do have their IDs filled in.
+     */
+    public List<MessageEntity> createMessages(List<MessageEntity> messages) {
+        int count = 0;
+        for (MessageEntity message : messages) {
+            entityManager.persist(message);
+            count += 1;
+
+            if (count % BATCH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return messages;
+    }
+
+    // Read queries use constructor expressions, projecting rows directly onto immutable Message records.
+    // No entities are instantiated, so nothing is added to the persistence context or dirty-checked at commit.
+    // The COMMIT flush mode prevents these reads from first flushing pending inserts of the same transaction.
+
+    private static final String MESSAGE_PROJECTION =
+            "SELECT NEW " + Message.class.getName() + "(m.id, m.timestamp, m.messageText) FROM Message m";
+
+    public Optional<Message> findMessage(long id) {
+        return createReadOnlyQuery(MESSAGE_PROJECTION + " WHERE m.id = :id")
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst();
+    }
+
+    public Optional<Long> findMaxMessageId() {
+        return Optional.ofNullable(
+                entityManager.createQuery("SELECT MAX(m.id) FROM Message m", Long.class)
+                        .setFlushMode(FlushModeType.COMMIT)
+                        .getSingleResult());
+    }
+
+    /**
+     * Keyset pagination query, returning at most "maxResults" messages with an ID greater than "afterId",
+     * ordered by ID, optionally restricted to the time window [fromTime, toTime).
+     */
+    public List<Message> findMessages(
+            long afterId,
+            Optional<LocalDateTime> fromTime,
+            Optional<LocalDateTime> toTime,
+            int maxResults) {
+        return createMessagesQuery(afterId, Optional.empty(), fromTime, toTime)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    /**
+     * Like method "findMessages", but only returning messages with an ID of at most "toId". The upper bound is
+     * part of the keyset query, so the last page of a bounded range does not return rows beyond it.
+     */
+    public List<Message> findMessages(
+            long afterId,
+            long toId,
+            Optional<LocalDateTime> fromTime,
+            Optional<LocalDateTime> toTime,
+            int maxResults) {
+        return createMessagesQuery(afterId, Optional.of(toId), fromTime, toTime)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    /**
+     * Like method "findMessages", but returning an unbounded lazy stream of messages, fetched from the
+     * database "fetchSize" rows at a time. Memory usage does not grow with the number of rows.
+     * The stream must be closed (which closes the underlying database cursor), and must be consumed inside
+     * the (JTA) transaction.
+     */
+    public Stream<Message> streamMessages(
+            long afterId,
+            Optional<LocalDateTime> fromTime,
+            Optional<LocalDateTime> toTime,
+            int fetchSize) {
+        // The PostgreSQL JDBC driver only honours the fetch size without auto-commit. Unwrapping the connection
+        // makes EclipseLink use the connection enlisted in the JTA transaction (so without auto-commit) for the query.
+        entityManager.unwrap(Connection.class);
+
+        // Method getResultStream would first read the complete result list, so an explicit (forward-only)
+        // scrollable cursor is used instead, reading the rows as the stream is consumed
+        Query query = createMessagesQuery(afterId, Optional.empty(), fromTime, toTime)
+                .setHint("eclipselink.jdbc.fetch-size", fetchSize)
+                .setHint("eclipselink.cursor.scrollable", "true")
+                .setHint("eclipselink.cursor.scrollable.result-set-type", "ForwardOnly")
+                .setHint("eclipselink.cursor.scrollable.result-set-concurrency", "ReadOnly");
+        ScrollableCursor cursor = (ScrollableCursor) query.getSingleResult();
+
+        Iterator<?> iterator = cursor;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .map(Message.class::cast)
+                .onClose(cursor::close);
+    }
+
+    /**
+     * Full-text search, returning at most "maxResults" messages with an ID greater than "afterId" whose
+     * message text matches the given query, ordered by ID. The query uses the web search syntax of PostgreSQL
+     * (words, "quoted phrases", OR, and -excluded words). The search uses the GIN index on the generated
+     * column "search_vector" (see README), so it is a native query.
+     */
+    public List<MessageEntity> searchMessages(String searchQuery, long afterId, int maxResults) {
+        String query = """
+                SELECT id, creation_time, message_text FROM message
+                WHERE search_vector @@ websearch_to_tsquery('simple', ?1) AND id > ?2
+                ORDER BY id LIMIT ?3""";
+        // Read-only entities, not tracked by the persistence context
+        @SuppressWarnings("unchecked")
+        List<MessageEntity> messages = entityManager.createNativeQuery(query, MessageEntity.class)
+                .setParameter(1, searchQuery)
+                .setParameter(2, afterId)
+                .setParameter(3, maxResults)
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint("eclipselink.read-only", "true")
+                .setHint("jakarta.persistence.query.timeout", SEARCH_TIMEOUT_MILLIS)
+                .getResultList();
+        return messages;
+    }
+
+    private TypedQuery<Message> createMessagesQuery(
+            long afterId,
+            Optional<Long> toId,
+            Optional<LocalDateTime> fromTime,
+            Optional<LocalDateTime> toTime) {
+        StringBuilder query = new StringBuilder(MESSAGE_PROJECTION).append(" WHERE m.id > :afterId");
+        toId.ifPresent(id -> query.append(" AND m.id <= :toId"));
+        fromTime.ifPresent(t -> query.append(" AND m.timestamp >= :fromTime"));
+        toTime.ifPresent(t -> query.append(" AND m.timestamp < :toTime"));
+        query.append(" ORDER BY m.id");
+
+        TypedQuery<Message> typedQuery = createReadOnlyQuery(query.toString())
+                .setParameter("afterId", afterId);
+        toId.ifPresent(id -> typedQuery.setParameter("toId", id));
+        fromTime.ifPresent(t -> typedQuery.setParameter("fromTime", t));
+        toTime.ifPresent(t -> typedQuery.setParameter("toTime", t));
+        return typedQuery;
     }
 
-    public List<MessageEntity> findAllMessages() {
-        String query = "SELECT m FROM Message m";
-        return entityManager.createQuery(query, MessageEntity.class).getResultList();
+    private TypedQuery<Message> createReadOnlyQuery(String query) {
+        return entityManager.createQuery(query, Message.class)
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint("eclipselink.read-only", "true");
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.dao;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.OptionalLong;
+
+/**
+ * Message payload DAO, for the binary payloads of messages received as BytesMessage. Payloads are potentially
+ * large, so they are passed to and from JDBC as streams, instead of as byte arrays in (JPA) entities.
+ * <p>
+ * Only the writes are really streamed, though. When reading a "bytea" value, the PostgreSQL JDBC driver first
+ * reads the whole value into memory, even through method "getBinaryStream". Hence payloads are limited to
+ * "mdbexample.payload.max-size" bytes (16 MiB by default), which bounds the heap needed per payload read.
+ * Larger payloads would need PostgreSQL large objects instead.
+ * <p>
+ * The JDBC connection is the one of the JTA EntityManager, so these statements run in the same transaction,
+ * on the same connection, as the JPA statements.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class MessagePayloadDao {
+
+    @PersistenceContext(name = "jpa-unit")
+    private EntityManager entityManager;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.payload.max-size", defaultValue = "16777216")
+    private long maxPayloadSize;
+
+    /**
+     * Inserts the payload of the message with the given ID, reading exactly "contentLength" bytes from the
+     * given input stream. The PostgreSQL JDBC driver sends the stream to the database without first
+     * materializing it as one byte array. Throws an IllegalArgumentException if the payload is larger than
+     * the maximum payload size.
+     */
+    public void createPayload(long messageId, InputStream payload, long contentLength) {
+        if (contentLength > maxPayloadSize) {
+            throw new IllegalArgumentException(
+                    "Payload of " + contentLength + " bytes exceeds the maximum of " + maxPayloadSize + " bytes");
+        }
+        String sql = "INSERT INTO message_payload (message_id, content_length, payload) VALUES (?, ?, ?)";
+        try (PreparedStatement statement = getConnection().prepareStatement(sql)) {
+            statement.setLong(1, messageId);
+            statement.setLong(2, contentLength);
+            statement.setBinaryStream(3, payload, contentLength);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not insert payload of message " + messageId, e);
+        }
+    }
+
+    public OptionalLong findContentLength(long messageId) {
+        String sql = "SELECT content_length FROM message_payload WHERE message_id = ?";
+        try (PreparedStatement statement = getConnection().prepareStatement(sql)) {
+            statement.setLong(1, messageId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? OptionalLong.of(resultSet.getLong(1)) : OptionalLong.empty();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not query payload length of message " + messageId, e);
+        }
+    }
+
+    /**
+     * Copies the payload of the message with the given ID to the given output stream, returning false if there
+     * is no such payload. Mind that the PostgreSQL JDBC driver holds the whole payload in memory while copying
+     * (see above).
+     */
+    public boolean copyPayload(long messageId, OutputStream outputStream) throws IOException {
+        String sql = "SELECT payload FROM message_payload WHERE message_id = ?";
+        try (PreparedStatement statement = getConnection().prepareStatement(sql)) {
+            statement.setLong(1, messageId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                try (InputStream payload = resultSet.getBinaryStream(1)) {
+                    payload.transferTo(outputStream);
+                }
+                return true;
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not query payload of message " + messageId, e);
+        }
+    }
+
+    private Connection getConnection() {
+        // EclipseLink returns the connection bound to the current transaction (binding it first if needed).
+        // This connection is managed by EclipseLink and the container, so it must not be closed here.
+        return entityManager.unwrap(Connection.class);
+    }
+}
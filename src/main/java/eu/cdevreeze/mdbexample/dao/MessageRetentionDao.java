@@ -0,0 +1,223 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.dao;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.persistence.PersistenceException;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DAO for enforcing the message retention policy, using plain JDBC (mostly PostgreSQL-specific DDL).
+ * <p>
+ * The methods must be called outside any JTA transaction. Each statement then runs in its own (auto-committed)
+ * local transaction, so no locks are held longer than one statement. That is also a requirement for
+ * "DETACH PARTITION ... CONCURRENTLY".
+ * <p>
+ * Daily partitions of the message table are named {@code message_pYYYYMMDD}. Other partitions are left alone.
+ * PostgreSQL does not support detaching a partition concurrently if the table has a default partition. In that
+ * case, a plain DETACH is used, which briefly takes an exclusive lock on the message table.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class MessageRetentionDao {
+
+    private static final String PARTITION_NAME_PREFIX = "message_p";
+
+    private static final DateTimeFormatter PARTITION_NAME_DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Resource(lookup = "jdbc/messageJpaDataSource")
+    private DataSource dataSource;
+
+    /**
+     * Returns true if the message table is a (declaratively) partitioned table.
+     */
+    public boolean isMessageTablePartitioned() {
+        String sql = "SELECT c.relkind FROM pg_class c WHERE c.oid = to_regclass('message')";
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() && "p".equals(resultSet.getString(1));
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not determine whether the message table is partitioned", e);
+        }
+    }
+
+    /**
+     * Returns true if the (partitioned) message table has a default partition.
+     */
+    public boolean hasDefaultPartition() {
+        String sql = "SELECT p.partdefid <> 0 FROM pg_partitioned_table p WHERE p.partrelid = to_regclass('message')";
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() && resultSet.getBoolean(1);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not determine whether the message table has a default partition", e);
+        }
+    }
+
+    /**
+     * Returns the days of the daily partitions of the message table, in chronological order.
+     */
+    public List<LocalDate> findDailyPartitions() {
+        String sql = """
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass('message') ORDER BY c.relname""";
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            List<LocalDate> days = new ArrayList<>();
+            while (resultSet.next()) {
+                String partitionName = resultSet.getString(1);
+                if (partitionName.matches(PARTITION_NAME_PREFIX + "[0-9]{8}")) {
+                    days.add(LocalDate.parse(
+                            partitionName.substring(PARTITION_NAME_PREFIX.length()), PARTITION_NAME_DATE_FORMAT));
+                }
+            }
+            return days;
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not query the partitions of the message table", e);
+        }
+    }
+
+    /**
+     * Creates the partition of the message table for the given (UTC) day, if it does not yet exist.
+     */
+    public void createDailyPartition(LocalDate day) {
+        String sql = "CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF message" +
+                " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')";
+        executeUpdate(sql);
+    }
+
+    /**
+     * Detaches the partition of the message table for the given day, and then drops it. Returns the number of rows
+     * removed this way. Unless "concurrently" is false (required if there is a default partition), the detach does
+     * not block inserts into other partitions.
+     */
+    public long dropDailyPartition(LocalDate day, boolean concurrently) {
+        String partitionName = partitionName(day);
+        executeUpdate("ALTER TABLE message DETACH PARTITION " + partitionName + (concurrently ? " CONCURRENTLY" : ""));
+
+        // The detached table is no longer visible to the application, so counting its rows blocks no one
+        long rowCount;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + partitionName)) {
+            resultSet.next();
+            rowCount = resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not count the rows of detached partition " + partitionName, e);
+        }
+
+        executeUpdate("DROP TABLE " + partitionName);
+        return rowCount;
+    }
+
+    /**
+     * Deletes at most "batchSize" of the oldest messages created before the given (UTC) time, returning
+     * the number of deleted messages. This is the retention strategy for a non-partitioned message table.
+     */
+    public int deleteMessagesCreatedBefore(LocalDateTime cutoffTime, int batchSize) {
+        String sql = """
+                DELETE FROM message WHERE id IN
+                (SELECT id FROM message WHERE creation_time < ? ORDER BY creation_time LIMIT ?)""";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, cutoffTime);
+            statement.setInt(2, batchSize);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not delete messages created before " + cutoffTime, e);
+        }
+    }
+
+    /**
+     * Deletes at most "batchSize" binary payloads whose message no longer exists, returning the number of
+     * deleted payloads.
+     */
+    public int deleteOrphanedPayloads(int batchSize) {
+        String sql = """
+                DELETE FROM message_payload WHERE message_id IN
+                (SELECT p.message_id FROM message_payload p
+                WHERE NOT EXISTS (SELECT 1 FROM message m WHERE m.id = p.message_id) LIMIT ?)""";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, batchSize);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not delete orphaned message payloads", e);
+        }
+    }
+
+    /**
+     * Deletes at most "batchSize" keys of messages processed before the given (UTC) time, returning the number
+     * of deleted keys. Rows locked by concurrent transactions are skipped.
+     */
+    public int deleteProcessedMessagesBefore(LocalDateTime cutoffTime, int batchSize) {
+        String sql = """
+                DELETE FROM processed_message WHERE message_key IN
+                (SELECT message_key FROM processed_message WHERE processing_time < ? LIMIT ? FOR UPDATE SKIP LOCKED)""";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, cutoffTime);
+            statement.setInt(2, batchSize);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not delete processed message keys older than " + cutoffTime, e);
+        }
+    }
+
+    /**
+     * Deletes at most "batchSize" outbox messages created before the given (UTC) time, returning the number
+     * of deleted outbox messages. Outbox messages that are being sent (and therefore locked) are skipped.
+     */
+    public int deleteOutboxMessagesCreatedBefore(LocalDateTime cutoffTime, int batchSize) {
+        String sql = """
+                DELETE FROM message_outbox WHERE id IN
+                (SELECT id FROM message_outbox WHERE creation_time < ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)""";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, cutoffTime);
+            statement.setInt(2, batchSize);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not delete outbox messages created before " + cutoffTime, e);
+        }
+    }
+
+    private void executeUpdate(String sql) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not execute: " + sql, e);
+        }
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_NAME_PREFIX + PARTITION_NAME_DATE_FORMAT.format(day);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.dao;
+
+import eu.cdevreeze.mdbexample.entity.OutboxMessageEntity;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.eclipse.persistence.sessions.Session;
+
+import java.util.List;
+
+/**
+ * Outbox message DAO, implemented using JPA.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class OutboxMessageDao {
+
+    @PersistenceContext(name = "jpa-unit")
+    private EntityManager entityManager;
+
+    public OutboxMessageEntity createOutboxMessage(OutboxMessageEntity outboxMessage) {
+        entityManager.persist(outboxMessage);
+        return outboxMessage;
+    }
+
+    /**
+     * Returns the oldest (at most "maxResults") outbox messages, locking them (SELECT ... FOR UPDATE) until
+     * the end of the transaction. Hence, concurrent relays (e.g. in other application instances) do not
+     * send the same outbox messages at the same time.
+     * <p>
+     * On PostgreSQL, outbox messages locked by another relay are skipped (FOR UPDATE SKIP LOCKED), so concurrent
+     * relays each take the next unlocked batch instead of waiting for each other. Other databases, such as the
+     * Derby database of the offline load test, lack SKIP LOCKED, and there a relay waits for the locks instead.
+     */
+    public List<OutboxMessageEntity> findOldestOutboxMessagesForUpdate(int maxResults) {
+        if (entityManager.unwrap(Session.class).getPlatform().isPostgreSQL()) {
+            String sql = "SELECT * FROM message_outbox ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+            @SuppressWarnings("unchecked")
+            List<OutboxMessageEntity> outboxMessages = entityManager.createNativeQuery(sql, OutboxMessageEntity.class)
+                    .setParameter(1, maxResults)
+                    .getResultList();
+            return outboxMessages;
+        }
+
+        String query = "SELECT o FROM OutboxMessage o ORDER BY o.id";
+        return entityManager.createQuery(query, OutboxMessageEntity.class)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    public int deleteOutboxMessages(List<Long> ids) {
+        String query = "DELETE FROM OutboxMessage o WHERE o.id IN :ids";
+        return entityManager.createQuery(query).setParameter("ids", ids).executeUpdate();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.dao;
+
+import eu.cdevreeze.mdbexample.entity.ProcessedMessageEntity;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Processed message DAO, implemented using JPA.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class ProcessedMessageDao {
+
+    @PersistenceContext(name = "jpa-unit")
+    private EntityManager entityManager;
+
+    public ProcessedMessageEntity createProcessedMessage(ProcessedMessageEntity processedMessage) {
+        entityManager.persist(processedMessage);
+        return processedMessage;
+    }
+
+    public boolean existsProcessedMessage(String messageKey) {
+        String query = "SELECT COUNT(p) FROM ProcessedMessage p WHERE p.messageKey = :messageKey";
+        return entityManager.createQuery(query, Long.class)
+                .setParameter("messageKey", messageKey)
+                .setFlushMode(FlushModeType.COMMIT)
+                .getSingleResult() > 0;
+    }
+}
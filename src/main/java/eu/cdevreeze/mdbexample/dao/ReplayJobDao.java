@@ -0,0 +1,57 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.dao;
+
+import eu.cdevreeze.mdbexample.entity.ReplayJobEntity;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.Optional;
+
+/**
+ * Replay job DAO, implemented using JPA.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class ReplayJobDao {
+
+    @PersistenceContext(name = "jpa-unit")
+    private EntityManager entityManager;
+
+    public ReplayJobEntity createReplayJob(ReplayJobEntity replayJob) {
+        entityManager.persist(replayJob);
+        return replayJob;
+    }
+
+    /**
+     * Returns the (managed) replay job with the given ID, if any. Changes to it are written at commit.
+     */
+    public Optional<ReplayJobEntity> findReplayJob(long id) {
+        return Optional.ofNullable(entityManager.find(ReplayJobEntity.class, id));
+    }
+
+    /**
+     * Like method "findReplayJob", but locking the replay job (SELECT ... FOR UPDATE) until the end of the
+     * transaction, so that no two batches of the same job run at the same time.
+     */
+    public Optional<ReplayJobEntity> findReplayJobForUpdate(long id) {
+        return Optional.ofNullable(entityManager.find(ReplayJobEntity.class, id, LockModeType.PESSIMISTIC_WRITE));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.dao;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.metamodel.EntityType;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Schema DAO, checking that the database schema matches the JPA entities (and has the optional columns that
+ * are not mapped by them), without changing anything.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+public class SchemaDao {
+
+    @PersistenceContext(name = "jpa-unit")
+    private EntityManager entityManager;
+
+    /**
+     * Selects (at most) one row of each entity, so all mapped tables and columns must exist. This also
+     * initializes the metamodel and the connection to the database. Throws a PersistenceException otherwise.
+     */
+    public void checkEntityTables() {
+        for (EntityType<?> entityType : entityManager.getMetamodel().getEntities()) {
+            try {
+                entityManager.createQuery("SELECT e FROM " + entityType.getName() + " e")
+                        .setHint("eclipselink.read-only", "true")
+                        .setMaxResults(1)
+                        .getResultList();
+            } catch (PersistenceException e) {
+                throw new PersistenceException("Schema check failed for entity " + entityType.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the message table has the generated full-text search column "search_vector" (see README),
+     * which is not created by JPA schema generation.
+     */
+    public boolean hasMessageSearchColumn() {
+        // EclipseLink returns the connection bound to the current transaction, which must not be closed here
+        Connection connection = entityManager.unwrap(Connection.class);
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet resultSet = metaData.getColumns(null, null, "message", "search_vector")) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not query the columns of the message table", e);
+        }
+    }
+}
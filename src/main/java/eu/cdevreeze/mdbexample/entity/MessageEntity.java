@@ -27,10 +27,20 @@ import java.util.Objects;
  * @author Chris de Vreeze
  */
 @Entity(name = "Message")
-@Table(name = "message")
+// The creation_time index supports time window queries (see MessageDao.findMessages)
+@Table(name = "message", indexes = @Index(name = "message_creation_time_idx", columnList = "creation_time"))
 public class MessageEntity {
 
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // IDs are allocated in blocks of ID_ALLOCATION_SIZE from sequence "message_id_seq" (which must therefore
+    // have the same increment), so most inserts need no database round trip to obtain an ID.
+    // The allocation size can be overridden without recompiling, using a "sequence-generator" element
+    // named "message_id_generator" in a META-INF/orm.xml mapping file.
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    @SequenceGenerator(
+            name = "message_id_generator", sequenceName = "message_id_seq", allocationSize = ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_id_generator")
     @Id
     @Column(name = "id")
     private Long id;
@@ -40,6 +50,9 @@ public class MessageEntity {
     @Column(name = "creation_time")
     private LocalDateTime timestamp;
 
+    // Null for messages with a binary payload, which is stored in table "message_payload" (see MessagePayloadEntity)
+    // Long message texts are compressed by PostgreSQL itself (TOAST), not by the application (see README)
+
     @Column(name = "message_text")
     private String messageText;
 
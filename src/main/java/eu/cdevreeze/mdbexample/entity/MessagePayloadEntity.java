@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.entity;
+
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+/**
+ * JPA entity holding the binary payload of a message received as BytesMessage. The corresponding Message row
+ * (with the same ID) has no message text. Payloads are written and read with plain JDBC, streaming them
+ * (see MessagePayloadDao), so this entity mainly defines the table. Mind that "equals" and "hashCode"
+ * ignore the (potentially very large) payload.
+ *
+ * @author Chris de Vreeze
+ */
+@Entity(name = "MessagePayload")
+@Table(name = "message_payload")
+public class MessagePayloadEntity {
+
+    @Id
+    @Column(name = "message_id")
+    private Long messageId;
+
+    @Column(name = "content_length")
+    private long contentLength;
+
+    // Mapped to a PostgreSQL "bytea" column
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "payload")
+    private byte[] payload;
+
+    public MessagePayloadEntity() {
+    }
+
+    public MessagePayloadEntity(Long messageId, long contentLength, byte[] payload) {
+        this.messageId = messageId;
+        this.contentLength = contentLength;
+        this.payload = payload;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessagePayloadEntity messagePayload)) return false;
+        return Objects.equals(messageId, messagePayload.messageId) && contentLength == messagePayload.contentLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(messageId, contentLength);
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePayload{" +
+                "messageId=" + messageId +
+                ", contentLength=" + contentLength +
+                '}';
+    }
+}
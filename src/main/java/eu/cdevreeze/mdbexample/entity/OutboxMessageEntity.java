@@ -0,0 +1,133 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Outbox JPA entity, for a stored message that still has to be forwarded to the copy queue, or, if the
+ * destination (a JNDI name) is not null, to a destination selected by the MessageRouter.
+ * Outbox rows are deleted once the message has been sent.
+ *
+ * @author Chris de Vreeze
+ */
+@Entity(name = "OutboxMessage")
+@Table(name = "message_outbox")
+public class OutboxMessageEntity {
+
+    @SequenceGenerator(
+            name = "message_outbox_id_generator",
+            sequenceName = "message_outbox_id_seq",
+            allocationSize = MessageEntity.ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_outbox_id_generator")
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "message_id")
+    private Long messageId;
+
+    @Column(name = "creation_time")
+    private LocalDateTime timestamp;
+
+    @Column(name = "message_text")
+    private String messageText;
+
+    @Column(name = "destination")
+    private String destination;
+
+    public OutboxMessageEntity() {
+    }
+
+    public OutboxMessageEntity(Long id, Long messageId, LocalDateTime timestamp, String messageText) {
+        this(id, messageId, timestamp, messageText, null);
+    }
+
+    public OutboxMessageEntity(Long id, Long messageId, LocalDateTime timestamp, String messageText, String destination) {
+        this.id = id;
+        this.messageId = messageId;
+        this.timestamp = timestamp;
+        this.messageText = messageText;
+        this.destination = destination;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getMessageText() {
+        return messageText;
+    }
+
+    public void setMessageText(String messageText) {
+        this.messageText = messageText;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OutboxMessageEntity message)) return false;
+        return Objects.equals(id, message.id) && Objects.equals(messageId, message.messageId) && Objects.equals(timestamp, message.timestamp) && Objects.equals(messageText, message.messageText) && Objects.equals(destination, message.destination);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, messageId, timestamp, messageText, destination);
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxMessage{" +
+                "id=" + id +
+                ", messageId=" + messageId +
+                ", timestamp=" + timestamp +
+                ", messageText='" + messageText + '\'' +
+                ", destination='" + destination + '\'' +
+                '}';
+    }
+}
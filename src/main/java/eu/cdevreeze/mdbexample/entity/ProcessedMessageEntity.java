@@ -0,0 +1,86 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * JPA entity recording that the JMS message with the given deduplication key (by default the JMSMessageID)
+ * has been processed. The key is the primary key, so processing the same message twice violates a unique index.
+ *
+ * @author Chris de Vreeze
+ */
+@Entity(name = "ProcessedMessage")
+// The processing_time index supports purging old keys in batches (see MessageRetentionJob)
+@Table(
+        name = "processed_message",
+        indexes = @Index(name = "processed_message_processing_time_idx", columnList = "processing_time"))
+public class ProcessedMessageEntity {
+
+    @Id
+    @Column(name = "message_key")
+    private String messageKey;
+
+    @Column(name = "processing_time")
+    private LocalDateTime processingTime;
+
+    public ProcessedMessageEntity() {
+    }
+
+    public ProcessedMessageEntity(String messageKey, LocalDateTime processingTime) {
+        this.messageKey = messageKey;
+        this.processingTime = processingTime;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public void setMessageKey(String messageKey) {
+        this.messageKey = messageKey;
+    }
+
+    public LocalDateTime getProcessingTime() {
+        return processingTime;
+    }
+
+    public void setProcessingTime(LocalDateTime processingTime) {
+        this.processingTime = processingTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ProcessedMessageEntity message)) return false;
+        return Objects.equals(messageKey, message.messageKey) && Objects.equals(processingTime, message.processingTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(messageKey, processingTime);
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessedMessage{" +
+                "messageKey='" + messageKey + '\'' +
+                ", processingTime=" + processingTime +
+                '}';
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.entity;
+
+import eu.cdevreeze.mdbexample.model.ReplayJobStatus;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Replay job JPA entity, holding the selection, settings, progress (checkpoint) and status of a replay job.
+ *
+ * @author Chris de Vreeze
+ */
+@Entity(name = "ReplayJob")
+@Table(name = "replay_job")
+public class ReplayJobEntity {
+
+    @SequenceGenerator(name = "replay_job_id_generator", sequenceName = "replay_job_id_seq", allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "replay_job_id_generator")
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "destination")
+    private String destination;
+
+    @Column(name = "start_after_id")
+    private long startAfterId;
+
+    @Column(name = "to_id")
+    private long toId;
+
+    @Column(name = "from_time")
+    private LocalDateTime fromTime;
+
+    @Column(name = "to_time")
+    private LocalDateTime toTime;
+
+    @Column(name = "checkpoint_id")
+    private long checkpointId;
+
+    @Column(name = "replayed_count")
+    private long replayedCount;
+
+    @Column(name = "batch_size")
+    private int batchSize;
+
+    @Column(name = "rate_per_second")
+    private double ratePerSecond;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private ReplayJobStatus status;
+
+    @Column(name = "error_message")
+    private String errorMessage;
+
+    @Column(name = "creation_time")
+    private LocalDateTime creationTime;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    public ReplayJobEntity() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    public long getStartAfterId() {
+        return startAfterId;
+    }
+
+    public void setStartAfterId(long startAfterId) {
+        this.startAfterId = startAfterId;
+    }
+
+    public long getToId() {
+        return toId;
+    }
+
+    public void setToId(long toId) {
+        this.toId = toId;
+    }
+
+    public LocalDateTime getFromTime() {
+        return fromTime;
+    }
+
+    public void setFromTime(LocalDateTime fromTime) {
+        this.fromTime = fromTime;
+    }
+
+    public LocalDateTime getToTime() {
+        return toTime;
+    }
+
+    public void setToTime(LocalDateTime toTime) {
+        this.toTime = toTime;
+    }
+
+    public long getCheckpointId() {
+        return checkpointId;
+    }
+
+    public void setCheckpointId(long checkpointId) {
+        this.checkpointId = checkpointId;
+    }
+
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    public void setReplayedCount(long replayedCount) {
+        this.replayedCount = replayedCount;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public ReplayJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ReplayJobStatus status) {
+        this.status = status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public LocalDateTime getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(LocalDateTime creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplayJobEntity replayJob)) return false;
+        return Objects.equals(id, replayJob.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayJob{" +
+                "id=" + id +
+                ", destination='" + destination + '\'' +
+                ", startAfterId=" + startAfterId +
+                ", toId=" + toId +
+                ", checkpointId=" + checkpointId +
+                ", replayedCount=" + replayedCount +
+                ", status=" + status +
+                '}';
+    }
+}
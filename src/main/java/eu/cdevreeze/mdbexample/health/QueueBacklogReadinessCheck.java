@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.health;
+
+import eu.cdevreeze.mdbexample.model.QueueStatus;
+import eu.cdevreeze.mdbexample.service.QueueMonitor;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Readiness check that is DOWN if the oldest message on one of the backlog queues (MicroProfile Config property
+ * "mdbexample.queue-monitor.backlog-queues", by default the queues consumed by the message-driven beans) is older
+ * than "max-backlog-age". That means that this application is falling behind, so that an autoscaler can add
+ * instances. The check uses the statuses cached by the QueueMonitor, so it does not touch the messaging provider.
+ * <p>
+ * The check is also DOWN if the status of a backlog queue is unknown (not checked yet, failed, or stale), since an
+ * unknown backlog must not be mistaken for an empty one. Per queue, the check data shows the status ("ok",
+ * "backlog" or "unknown"), and the depth and oldest message age, if known. If the QueueMonitor is disabled,
+ * the check is UP.
+ *
+ * @author Chris de Vreeze
+ */
+@Readiness
+@ApplicationScoped
+public class QueueBacklogReadinessCheck implements HealthCheck {
+
+    @Inject
+    private QueueMonitor queueMonitor;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.backlog-queues",
+            defaultValue = "jms/MdbExampleQueue,jms/MdbExampleDummyQueue")
+    private List<String> backlogQueueNames;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.max-backlog-age", defaultValue = "PT5M")
+    private Duration maxBacklogAge;
+
+    @Override
+    public HealthCheckResponse call() {
+        Instant now = Instant.now();
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("queue-backlog").up();
+        if (!queueMonitor.isEnabled()) {
+            return response.withData("monitoring", "disabled").build();
+        }
+
+        for (String queueName : backlogQueueNames) {
+            QueueStatus queueStatus = queueMonitor.getQueueStatuses().get(queueName);
+            if (queueStatus == null || !queueMonitor.isKnown(queueStatus, now)) {
+                // Not checked yet, failed or stale
+                response.withData(queueName + ".status", "unknown").down();
+                if (queueStatus != null) {
+                    response.withData(queueName + ".checkTime", queueStatus.checkTime().toString());
+                    queueStatus.errorMessage().ifPresent(msg -> response.withData(queueName + ".error", msg));
+                }
+                continue;
+            }
+            Optional<Duration> oldestMessageAge = queueStatus.getOldestMessageAge(now);
+            queueStatus.depth().ifPresent(depth -> response.withData(queueName + ".depth", depth));
+            oldestMessageAge.ifPresent(age -> response.withData(queueName + ".oldestMessageAgeMillis", age.toMillis()));
+
+            if (oldestMessageAge.filter(age -> age.compareTo(maxBacklogAge) > 0).isPresent()) {
+                response.withData(queueName + ".status", "backlog").down();
+            } else {
+                response.withData(queueName + ".status", "ok");
+            }
+        }
+        return response.build();
+    }
+}
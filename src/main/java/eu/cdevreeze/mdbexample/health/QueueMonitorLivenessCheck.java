@@ -0,0 +1,72 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.health;
+
+import eu.cdevreeze.mdbexample.model.QueueStatus;
+import eu.cdevreeze.mdbexample.service.QueueMonitor;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Liveness;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Liveness check that is DOWN if the QueueMonitor has not completed a check for a while, although it should
+ * do so every 15 seconds. That indicates that the container's timer service (or its threads) got stuck.
+ * Messaging provider outages, on the other hand, do not make this check DOWN, since a restart would not help.
+ * The queues whose status is unknown (failed or stale check) are shown in the check data, though.
+ * If the QueueMonitor is disabled, the check is UP.
+ *
+ * @author Chris de Vreeze
+ */
+@Liveness
+@ApplicationScoped
+public class QueueMonitorLivenessCheck implements HealthCheck {
+
+    private static final Duration MAX_REFRESH_AGE = Duration.ofMinutes(2);
+
+    private final Instant startTime = Instant.now();
+
+    @Inject
+    private QueueMonitor queueMonitor;
+
+    @Override
+    public HealthCheckResponse call() {
+        if (!queueMonitor.isEnabled()) {
+            return HealthCheckResponse.named("queue-monitor").up().withData("monitoring", "disabled").build();
+        }
+
+        Instant now = Instant.now();
+        Optional<Instant> lastRefreshTime = queueMonitor.getLastRefreshTime();
+        Instant referenceTime = lastRefreshTime.orElse(startTime);
+        String unknownQueues = queueMonitor.getQueueStatuses().values().stream()
+                .filter(queueStatus -> !queueMonitor.isKnown(queueStatus, now))
+                .map(QueueStatus::queueName)
+                .collect(Collectors.joining(","));
+
+        return HealthCheckResponse.named("queue-monitor")
+                .status(Duration.between(referenceTime, now).compareTo(MAX_REFRESH_AGE) <= 0)
+                .withData("lastRefreshTime", lastRefreshTime.map(Instant::toString).orElse("none"))
+                .withData("unknownQueues", unknownQueues.isEmpty() ? "none" : unknownQueues)
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.health;
+
+import eu.cdevreeze.mdbexample.startup.StartupWarmUp;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Readiness check that is DOWN until the startup warm-up (if enabled) has completed successfully. Failed warm-up
+ * attempts are retried, so the check data shows the number of attempts, and the failure of the last one, if any.
+ *
+ * @author Chris de Vreeze
+ */
+@Readiness
+@ApplicationScoped
+public class WarmUpReadinessCheck implements HealthCheck {
+
+    @Inject
+    private StartupWarmUp startupWarmUp;
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("warm-up")
+                .status(startupWarmUp.isCompleted())
+                .withData("attempts", startupWarmUp.getAttempts());
+        startupWarmUp.getFailure().ifPresent(failure -> response.withData("failure", failure));
+        return response.build();
+    }
+}
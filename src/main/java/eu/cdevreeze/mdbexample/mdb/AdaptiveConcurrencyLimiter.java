@@ -0,0 +1,206 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.mdb;
+
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive (AIMD) limit on the number of messages that MessageStoringAndForwardingMessageListener processes
+ * concurrently. Each message takes a permit before touching the database, and returns it when its transaction
+ * has completed. If no permit is available, the listener thread waits, so fewer messages are worked on than the
+ * listener concurrency (maxPoolDepth) would allow.
+ * <p>
+ * The limit is adjusted after each transaction. It is decreased multiplicatively (at most once per "decrease
+ * interval") when the time from the start of storing the message until the completion of the transaction exceeded
+ * the latency threshold, or when the transaction rolled back. The transaction completion is included, because in
+ * forwarding mode XA the INSERT statements are only flushed at commit, and the two-phase commit itself also waits
+ * for the database.
+ * Otherwise, it increases additively, by about 1 per "limit" successful messages. So when the database slows down,
+ * the listener backs off instead of piling up transaction timeouts and redeliveries. The current limit is exposed
+ * as a metric.
+ * <p>
+ * A listener thread waiting for a permit already holds its (XA) transaction, so the maximum wait must stay well
+ * below the transaction timeout. By default it is short, and a message that cannot get a permit in time is rolled
+ * back and redelivered later.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class AdaptiveConcurrencyLimiter {
+
+    // Key of the transaction-scoped resource holding the System.nanoTime() at which storing the message started
+    private static final Object STORE_START_KEY = new Object();
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.min-limit", defaultValue = "1")
+    private int minLimit;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.max-limit", defaultValue = "10")
+    private int maxLimit;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.latency-threshold", defaultValue = "PT0.5S")
+    private Duration latencyThreshold;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.decrease-factor", defaultValue = "0.5")
+    private double decreaseFactor;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.decrease-interval", defaultValue = "PT1S")
+    private Duration decreaseInterval;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.backpressure.max-wait", defaultValue = "PT1S")
+    private Duration maxWait;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+
+    // Guarded by "lock"
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+
+    @PostConstruct
+    void init() {
+        limit = maxLimit;
+        lastDecreaseNanos = System.nanoTime() - decreaseInterval.toNanos();
+    }
+
+    /**
+     * Takes a permit, waiting at most the configured maximum time, and arranges for its return once the current
+     * transaction has completed. Returns false if no permit became available in time, in which case the caller
+     * should roll back the transaction, so that the message is redelivered later.
+     */
+    public boolean acquireUntilTransactionCompletion() throws InterruptedException {
+        if (!enabled) {
+            return true;
+        }
+
+        long remainingNanos = maxWait.toNanos();
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remainingNanos <= 0L) {
+                    return false;
+                }
+                remainingNanos = permitAvailable.awaitNanos(remainingNanos);
+            }
+            inFlight += 1;
+        } finally {
+            lock.unlock();
+        }
+
+        AtomicLong storeStartNanos = new AtomicLong(-1L);
+        try {
+            transactionSynchronizationRegistry.putResource(STORE_START_KEY, storeStartNanos);
+            TransactionCallbacks.afterCompletion(
+                    transactionSynchronizationRegistry,
+                    status -> release(status == Status.STATUS_COMMITTED, getLatencyNanos(storeStartNanos.get())));
+        } catch (RuntimeException e) {
+            release(false, -1L);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Records when (as System.nanoTime()) storing the message of the current transaction started. The time from
+     * then until the transaction has completed is the latency signal that is evaluated at transaction completion.
+     */
+    public void recordStoreStart(long startNanos) {
+        Object storeStartNanos = transactionSynchronizationRegistry.getResource(STORE_START_KEY);
+        if (storeStartNanos instanceof AtomicLong storeStartHolder) {
+            storeStartHolder.set(startNanos);
+        }
+    }
+
+    @Gauge(
+            name = "storingListener.concurrencyLimit",
+            unit = MetricUnits.NONE,
+            description = "Current adaptive limit on concurrently processed messages")
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Gauge(
+            name = "storingListener.inFlight",
+            unit = MetricUnits.NONE,
+            description = "Number of messages currently holding a concurrency permit")
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long getLatencyNanos(long storeStartNanos) {
+        // No latency signal if the message was not stored (e.g. a duplicate)
+        return (storeStartNanos < 0L) ? -1L : System.nanoTime() - storeStartNanos;
+    }
+
+    private void release(boolean committed, long storeLatencyNanos) {
+        boolean slow = storeLatencyNanos > latencyThreshold.toNanos();
+
+        lock.lock();
+        try {
+            inFlight -= 1;
+
+            if (!committed || slow) {
+                long now = System.nanoTime();
+                if (now - lastDecreaseNanos >= decreaseInterval.toNanos()) {
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    lastDecreaseNanos = now;
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
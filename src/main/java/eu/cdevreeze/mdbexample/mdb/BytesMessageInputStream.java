@@ -0,0 +1,70 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.mdb;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream reading the body of a (read-only) BytesMessage, so the body can be streamed to its destination
+ * (e.g. a JDBC statement) in small chunks, instead of first being copied into one large byte array.
+ *
+ * @author Chris de Vreeze
+ */
+final class BytesMessageInputStream extends InputStream {
+
+    private final BytesMessage bytesMessage;
+
+    private final byte[] singleByte = new byte[1];
+
+    // Reused for reads into the middle of a buffer, which BytesMessage does not support directly
+    private byte[] chunk = new byte[0];
+
+    BytesMessageInputStream(BytesMessage bytesMessage) {
+        this.bytesMessage = bytesMessage;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(singleByte, 0, 1) < 0) ? -1 : Byte.toUnsignedInt(singleByte[0]);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        try {
+            if (offset == 0) {
+                return bytesMessage.readBytes(buffer, length);
+            }
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            int count = bytesMessage.readBytes(chunk, length);
+            if (count > 0) {
+                System.arraycopy(chunk, 0, buffer, offset, count);
+            }
+            return count;
+        } catch (JMSException e) {
+            throw new IOException("Could not read BytesMessage body", e);
+        }
+    }
+}
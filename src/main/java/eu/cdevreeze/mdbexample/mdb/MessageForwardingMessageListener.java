@@ -16,12 +16,20 @@
 
 package eu.cdevreeze.mdbexample.mdb;
 
+import eu.cdevreeze.mdbexample.routing.MessageRouter;
+import eu.cdevreeze.mdbexample.service.LoadTestRecorder;
+import eu.cdevreeze.mdbexample.startup.StartupMetrics;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import jakarta.ejb.*;
 import jakarta.inject.Inject;
 import jakarta.jms.*;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
 
 import java.util.Objects;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 /**
@@ -31,6 +39,10 @@ import java.util.logging.Logger;
  * (which may or may not be desirable, or even lead to infinite redelivery, depending on configuration
  * and/or message settings).
  * <p>
+ * TextMessages are forwarded as new messages with the same text. BytesMessages and StreamMessages are forwarded
+ * as they are, without copying their (potentially large) bodies. Messages are also sent to the destinations
+ * selected by the content-based MessageRouter, if any routing rules have been configured.
+ * <p>
  * Note that at least 3 Jakarta EE specs play a role here: the CDI spec, the Jakarta Messaging spec
  * (JMS) and the EJB spec (in particular for message-driven beans).
  *
@@ -50,6 +62,8 @@ public class MessageForwardingMessageListener implements MessageListener {
 
     private static final Logger logger = Logger.getLogger(MessageForwardingMessageListener.class.getName());
 
+    private static final String LISTENER_NAME = MessageForwardingMessageListener.class.getSimpleName();
+
     // This injected JMSContext (Connection + Session) should not be seen as a complete (JTA) transactional context,
     // but (in CDI terms) the JMSContext is TransactionScoped
     // (see https://jakarta.ee/specifications/messaging/3.1/jakarta-messaging-spec-3.1#use-of-jakarta-messaging-api-in-jakarta-ee-applications).
@@ -64,6 +78,43 @@ public class MessageForwardingMessageListener implements MessageListener {
     @Resource(lookup = "jms/MdbExampleCopiedDummyQueue")
     private Queue copyQueue;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    // Messages with the same value for this string property, if configured, are processed one at a time
+    @Inject
+    @ConfigProperty(name = "mdbexample.forwarding-listener.key-lock-property")
+    private Optional<String> keyLockProperty;
+
+    @Inject
+    private MessageKeyLocks messageKeyLocks;
+
+    @Inject
+    private PoisonMessageHandler poisonMessageHandler;
+
+    @Inject
+    private MessageRouter messageRouter;
+
+    @Inject
+    private StartupMetrics startupMetrics;
+
+    @Inject
+    private LoadTestRecorder loadTestRecorder;
+
+    private MessageListenerMetrics metrics;
+
+    private MessageRoutingStage routingStage;
+
+    @PostConstruct
+    void init() {
+        metrics = new MessageListenerMetrics(
+                metricRegistry, transactionSynchronizationRegistry, LISTENER_NAME, loadTestRecorder);
+        routingStage = new MessageRoutingStage(messageRouter, metrics);
+    }
+
     @Override
     // TransactionAttribute annotation value and even annotation itself can be left implicit, since this is the default
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
@@ -72,6 +123,7 @@ public class MessageForwardingMessageListener implements MessageListener {
         // for a similar example, where sending the message occurs in the same transaction running method onMessage.
 
         logger.info("Entering MessageForwardingMessageListener.onMessage");
+        startupMetrics.recordMessageReceived();
 
         Objects.requireNonNull(jmsContext, "JMSContext must be non-null");
         Objects.requireNonNull(messageDrivenContext, "MessageDrivenContext must be non-null");
@@ -79,22 +131,82 @@ public class MessageForwardingMessageListener implements MessageListener {
 
         logger.info("JMSContext: " + jmsContext);
 
-        try {
-            if (message instanceof TextMessage textMessage) {
-                String messageText = textMessage.getText();
-
-                logger.info("Message payload: " + messageText);
+        // The total processing time and the transaction outcome are only known after the transaction completed
+        long startNanos = System.nanoTime();
+        metrics.recordAfterCompletion(message, startNanos);
 
-                jmsContext.createProducer().send(copyQueue, messageText);
+        try {
+            if (poisonMessageHandler.isPoisonMessage(message)) {
+                // Do not even try again; just move the message out of the way
+                logger.warning("Poison message " + message.getJMSMessageID() + ". Moving it to the dead-letter queue.");
+                poisonMessageHandler.sendToDeadLetterQueue(jmsContext, message, LISTENER_NAME);
+                metrics.recordDeadLettered();
             } else {
-                logger.warning("Unsupported message type: " + message.getClass().getName());
+                processMessage(message);
             }
         } catch (JMSException e) {
             logger.warning("JMSException caught: " + e);
+            poisonMessageHandler.recordFailure(message, e);
             messageDrivenContext.setRollbackOnly();
             // No (unchecked) exception thrown
+        } catch (InterruptedException e) {
+            logger.warning("Interrupted while waiting for a lock or permit");
+            Thread.currentThread().interrupt();
+            messageDrivenContext.setRollbackOnly();
+        } catch (RuntimeException e) {
+            // E.g. a database failure; the container rolls back the transaction
+            poisonMessageHandler.recordFailure(message, e);
+            throw e;
         }
 
         logger.info("Leaving MessageForwardingMessageListener.onMessage (without throwing any exceptions)");
     }
+
+    private void processMessage(Message message) throws JMSException, InterruptedException {
+        if (!lockMessageKey(message)) {
+            logger.warning("Timeout waiting for the lock on the message key. Rolling back.");
+            messageDrivenContext.setRollbackOnly();
+        } else if (message instanceof TextMessage textMessage) {
+            long phaseStartNanos = System.nanoTime();
+            String messageText = textMessage.getText();
+            metrics.recordPhase(MessageListenerMetrics.Phase.TEXT_EXTRACTION, phaseStartNanos);
+
+            logger.info("Message payload: " + messageText);
+
+            phaseStartNanos = System.nanoTime();
+            jmsContext.createProducer().send(copyQueue, messageText);
+            metrics.recordPhase(MessageListenerMetrics.Phase.SEND, phaseStartNanos);
+
+            routingStage.routeMessage(jmsContext, message);
+            metrics.recordProcessed();
+        } else if (message instanceof BytesMessage || message instanceof StreamMessage) {
+            // The received message itself is forwarded, so its (potentially large) body is not copied
+            logger.info("Forwarding " + message.getClass().getSimpleName() + " " + message.getJMSMessageID());
+
+            long phaseStartNanos = System.nanoTime();
+            jmsContext.createProducer().send(copyQueue, message);
+            metrics.recordPhase(MessageListenerMetrics.Phase.SEND, phaseStartNanos);
+
+            routingStage.routeMessage(jmsContext, message);
+            metrics.recordProcessed();
+        } else {
+            logger.warning("Unsupported message type: " + message.getClass().getName());
+            metrics.recordUnsupportedType();
+        }
+    }
+
+    /**
+     * Locks the key of the message, if a key property is configured and the message has it, until the transaction
+     * has completed. Returns false if the lock could not be obtained in time. See {@link MessageKeyLocks}.
+     */
+    private boolean lockMessageKey(Message message) throws JMSException, InterruptedException {
+        if (keyLockProperty.isEmpty()) {
+            return true;
+        }
+        Optional<String> key = Optional.ofNullable(message.getStringProperty(keyLockProperty.get()));
+        if (key.isEmpty()) {
+            return true;
+        }
+        return messageKeyLocks.lockUntilTransactionCompletion(LISTENER_NAME, key.get());
+    }
 }
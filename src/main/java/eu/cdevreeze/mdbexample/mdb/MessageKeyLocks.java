@@ -0,0 +1,91 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.mdb;
+
+import com.google.common.util.concurrent.Striped;
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Striped locks on message keys (such as the JMSXGroupID), shared by all instances of the message-driven beans.
+ * A message listener holding the lock for a key has exclusive access to that key until its transaction has
+ * completed. So messages with the same key are never processed concurrently, while messages with different keys are
+ * processed in parallel, up to the concurrency of the listener (its "maxPoolDepth").
+ * <p>
+ * This is mutual exclusion, not ordering. Messages with the same key are processed in the order in which the listener
+ * threads happen to obtain the lock, which is often, but not necessarily, the queue order. A rolled back message
+ * is redelivered after messages behind it may already have been committed. Strict per-key ordering needs support
+ * of the messaging provider, such as message groups (JMSXGroupID) delivered to one consumer at a time, or a
+ * key-partitioned set of queues each consumed by one listener instance (maxPoolDepth 1).
+ * <p>
+ * Messages with the same key wait for each other, and the waiting listener threads hold their transactions and
+ * are not available for other messages (head-of-line blocking). Hence the short default lock timeout, after which
+ * the message is rolled back and redelivered later. Mind that each such redelivery counts as a delivery attempt
+ * for the PoisonMessageHandler. Semaphores are used instead of reentrant locks, because the lock is released by the
+ * thread completing the transaction, which need not be the thread that obtained it.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class MessageKeyLocks {
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.key-locks.stripes", defaultValue = "256")
+    private int stripes;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.key-locks.timeout", defaultValue = "PT1S")
+    private Duration lockTimeout;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private Striped<Semaphore> locks;
+
+    @PostConstruct
+    void init() {
+        locks = Striped.semaphore(stripes, 1);
+    }
+
+    /**
+     * Obtains the lock for the given key of the given listener, and arranges for its release once the current
+     * transaction has completed. Returns false if the lock could not be obtained within the configured timeout,
+     * in which case the caller should roll back the transaction, so that the message is redelivered later.
+     */
+    public boolean lockUntilTransactionCompletion(String listenerName, String key) throws InterruptedException {
+        Semaphore lock = locks.get(listenerName + "/" + key);
+
+        if (!lock.tryAcquire(lockTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        try {
+            TransactionCallbacks.afterCompletion(transactionSynchronizationRegistry, status -> lock.release());
+        } catch (RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return true;
+    }
+}
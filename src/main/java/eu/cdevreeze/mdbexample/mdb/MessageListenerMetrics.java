@@ -0,0 +1,195 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.mdb;
+
+import eu.cdevreeze.mdbexample.service.LoadTestRecorder;
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.transaction.Status;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.metrics.*;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Metrics of one message listener. There is a timer per processing phase, a timer for the total duration
+ * including transaction completion (so including 2-phase commit), and counters for processed (really stored and/or
+ * forwarded), rolled back, unsupported, duplicate and dead-lettered (poison) messages. Each message is counted once,
+ * according to the outcome set during the transaction, and only after commit (a rolled back message only counts as
+ * rolled back). All metrics have a "listener" tag, and the phase timers also have a "phase" tag.
+ * There is also a timer for the end-to-end latency of committed messages, from sending (the JMSTimestamp) until
+ * transaction completion. Mind that this latency is only meaningful if the sender's clock is in sync with ours.
+ * <p>
+ * The transaction outcomes and end-to-end latencies are also passed to the LoadTestRecorder, for load test reports,
+ * as well as the message keys and sequence numbers in keyed load test runs.
+ * <p>
+ * The metrics are shown at the "/metrics" endpoint, in the "application" scope.
+ *
+ * @author Chris de Vreeze
+ */
+final class MessageListenerMetrics {
+
+    private enum Outcome {NONE, PROCESSED, UNSUPPORTED_TYPE, DUPLICATE, DEAD_LETTERED}
+
+    enum Phase {
+        TEXT_EXTRACTION("textExtraction"),
+        STORE("store"),
+        SEND("send"),
+        ROUTE("route");
+
+        private final String tagValue;
+
+        Phase(String tagValue) {
+            this.tagValue = tagValue;
+        }
+    }
+
+    private final Map<Phase, Timer> phaseTimers = new EnumMap<>(Phase.class);
+    private final Timer totalTimer;
+    private final Timer endToEndTimer;
+    private final Counter processedCounter;
+    private final Counter rolledBackCounter;
+    private final Counter unsupportedTypeCounter;
+    private final Counter duplicateCounter;
+    private final Counter deadLetteredCounter;
+
+    private final TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+    private final String listenerName;
+    private final LoadTestRecorder loadTestRecorder;
+
+    MessageListenerMetrics(
+            MetricRegistry metricRegistry,
+            TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+            String listenerName,
+            LoadTestRecorder loadTestRecorder) {
+        this.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+        this.listenerName = listenerName;
+        this.loadTestRecorder = loadTestRecorder;
+        Tag listenerTag = new Tag("listener", listenerName);
+
+        for (Phase phase : Phase.values()) {
+            phaseTimers.put(
+                    phase,
+                    metricRegistry.timer(
+                            Metadata.builder()
+                                    .withName("messageListener.phase")
+                                    .withDescription("Duration of one processing phase of a message listener")
+                                    .build(),
+                            listenerTag,
+                            new Tag("phase", phase.tagValue)));
+        }
+        totalTimer = metricRegistry.timer(
+                Metadata.builder()
+                        .withName("messageListener.total")
+                        .withDescription("Duration of message processing including transaction completion")
+                        .build(),
+                listenerTag);
+        endToEndTimer = metricRegistry.timer(
+                Metadata.builder()
+                        .withName("messageListener.endToEnd")
+                        .withDescription("Time from sending the message (JMSTimestamp) until transaction completion")
+                        .build(),
+                listenerTag);
+        processedCounter = metricRegistry.counter("messageListener.processed", listenerTag);
+        rolledBackCounter = metricRegistry.counter("messageListener.rolledBack", listenerTag);
+        unsupportedTypeCounter = metricRegistry.counter("messageListener.unsupportedType", listenerTag);
+        duplicateCounter = metricRegistry.counter("messageListener.duplicate", listenerTag);
+        deadLetteredCounter = metricRegistry.counter("messageListener.deadLettered", listenerTag);
+    }
+
+    /**
+     * Records the duration of the given phase, which started at "startNanos" (a {@link System#nanoTime()} value).
+     */
+    void recordPhase(Phase phase, long startNanos) {
+        phaseTimers.get(phase).update(Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Arranges for the total duration, the end-to-end latency and the message outcome to be recorded once
+     * the current transaction has completed. The processing of the message started at "startNanos"
+     * (a {@link System#nanoTime()} value). Must be called before the outcome is set, in the same transaction.
+     */
+    void recordAfterCompletion(Message message, long startNanos) {
+        long jmsTimestamp = getJmsTimestamp(message);
+        Optional<LoadTestRecorder.KeySequence> keySequence = loadTestRecorder.findKeySequence(message);
+
+        // The outcome is set later in the transaction, so it is kept as a transaction-scoped resource
+        AtomicReference<Outcome> outcome = new AtomicReference<>(Outcome.NONE);
+        transactionSynchronizationRegistry.putResource(this, outcome);
+
+        TransactionCallbacks.afterCompletion(transactionSynchronizationRegistry, status -> {
+            totalTimer.update(Duration.ofNanos(System.nanoTime() - startNanos));
+
+            // Only a known commit counts; e.g. STATUS_UNKNOWN (heuristic outcome) counts as a rollback
+            boolean committed = status == Status.STATUS_COMMITTED;
+            if (committed) {
+                switch (outcome.get()) {
+                    case PROCESSED -> processedCounter.inc();
+                    case UNSUPPORTED_TYPE -> unsupportedTypeCounter.inc();
+                    case DUPLICATE -> duplicateCounter.inc();
+                    case DEAD_LETTERED -> deadLetteredCounter.inc();
+                    case NONE -> {
+                    }
+                }
+                // The JMSTimestamp is 0 if the sender disabled it
+                if (jmsTimestamp > 0) {
+                    endToEndTimer.update(Duration.ofMillis(System.currentTimeMillis() - jmsTimestamp));
+                }
+            } else {
+                rolledBackCounter.inc();
+            }
+            loadTestRecorder.recordProcessed(listenerName, jmsTimestamp, committed, keySequence);
+        });
+    }
+
+    /**
+     * Sets the outcome of the message of the current transaction to "processed" (i.e. really stored and/or forwarded).
+     */
+    void recordProcessed() {
+        setOutcome(Outcome.PROCESSED);
+    }
+
+    void recordUnsupportedType() {
+        setOutcome(Outcome.UNSUPPORTED_TYPE);
+    }
+
+    void recordDuplicate() {
+        setOutcome(Outcome.DUPLICATE);
+    }
+
+    void recordDeadLettered() {
+        setOutcome(Outcome.DEAD_LETTERED);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setOutcome(Outcome value) {
+        ((AtomicReference<Outcome>) transactionSynchronizationRegistry.getResource(this)).set(value);
+    }
+
+    private static long getJmsTimestamp(Message message) {
+        try {
+            return message.getJMSTimestamp();
+        } catch (JMSException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.cdevreeze.mdbexample.mdb;
+
+import eu.cdevreeze.mdbexample.routing.MessageRouter;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Content-based routing stage of one message listener, shared by both listeners. It uses the MessageRouter, either
+ * to send a message to the selected destinations right away (in the listener transaction), or to only select them
+ * (for storing the routed copies in the outbox, in forwarding mode OUTBOX). Without routing rules, it does nothing.
+ * Its duration is recorded as phase ROUTE in the listener metrics.
+ *
+ * @author Chris de Vreeze
+ */
+final class MessageRoutingStage {
+
+    private static final Logger logger = Logger.getLogger(MessageRoutingStage.class.getName());
+
+    private final MessageRouter messageRouter;
+    private final MessageListenerMetrics metrics;
+
+    MessageRoutingStage(MessageRouter messageRouter, MessageListenerMetrics metrics) {
+        this.messageRouter = messageRouter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends the message to the destinations selected by the routing rules, if any, using the given JMSContext
+     * (so in the current transaction).
+     */
+    void routeMessage(JMSContext jmsContext, Message message) throws JMSException {
+        if (!messageRouter.hasRules()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int destinationCount = messageRouter.route(jmsContext, message);
+        metrics.recordPhase(MessageListenerMetrics.Phase.ROUTE, startNanos);
+
+        logger.info("Routed message to " + destinationCount + " destination(s)");
+    }
+
+    /**
+     * Returns the JNDI names of the destinations selected by the routing rules, if any, without sending anything.
+     */
+    List<String> selectDestinationNames(Message message) throws JMSException {
+        if (!messageRouter.hasRules()) {
+            return List.of();
+        }
+        long startNanos = System.nanoTime();
+        List<String> destinationNames = messageRouter.selectDestinationNames(message);
+        metrics.recordPhase(MessageListenerMetrics.Phase.ROUTE, startNanos);
+        return destinationNames;
+    }
+}
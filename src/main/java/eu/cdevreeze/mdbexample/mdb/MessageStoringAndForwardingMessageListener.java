@@ -17,14 +17,24 @@
 package eu.cdevreeze.mdbexample.mdb;
 
 import eu.cdevreeze.mdbexample.model.MessageData;
+import eu.cdevreeze.mdbexample.routing.MessageRouter;
+import eu.cdevreeze.mdbexample.service.ForwardingMode;
+import eu.cdevreeze.mdbexample.service.LoadTestRecorder;
 import eu.cdevreeze.mdbexample.service.MessageService;
+import eu.cdevreeze.mdbexample.startup.StartupMetrics;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import jakarta.ejb.*;
 import jakarta.inject.Inject;
 import jakarta.jms.*;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 /**
@@ -35,6 +45,25 @@ import java.util.logging.Logger;
  * and/or message settings). This message-driven bean also stores the message in a database. This database
  * action is part of the same (distributed) JTA transaction.
  * <p>
+ * Alternatively, in forwarding mode OUTBOX, the message is stored together with an outbox entry in a separate
+ * local database transaction, and forwarding is left to the OutboxRelay. See {@link ForwardingMode}.
+ * <p>
+ * In forwarding mode OUTBOX, redelivered messages that have already been processed are recognized by their
+ * deduplication key (by default the JMSMessageID), and are then consumed without storing or forwarding them again.
+ * This makes the at-least-once outbox mode safe to use. In XA mode, a message is only redelivered if storing it
+ * has been rolled back as well, so deduplication is off by default, sparing an insert into table processed_message
+ * per message.
+ * <p>
+ * Besides TextMessages, BytesMessages are supported. Their (potentially large) payload is streamed into a binary
+ * column, and the received message itself is forwarded, so the payload is never copied into a String or byte array.
+ * <p>
+ * Stored messages are also sent to the destinations selected by the content-based MessageRouter, if any
+ * routing rules have been configured. In XA mode, these sends are part of the listener transaction. In OUTBOX
+ * mode, the routed copies are outbox entries with their destination, stored in the same local transaction as the
+ * message (and its deduplication key), and sent by the OutboxRelay. So a rollback of the listener transaction
+ * cannot lose them, and no two-phase commit is needed. The routed copies then only carry the message body,
+ * not the properties of the received message.
+ * <p>
  * Note that at least 3 Jakarta EE specs play a role here: the CDI spec, the Jakarta Messaging spec
  * (JMS) and the EJB spec (in particular for message-driven beans).
  *
@@ -54,6 +83,8 @@ public class MessageStoringAndForwardingMessageListener implements MessageListen
 
     private static final Logger logger = Logger.getLogger(MessageStoringAndForwardingMessageListener.class.getName());
 
+    private static final String LISTENER_NAME = MessageStoringAndForwardingMessageListener.class.getSimpleName();
+
     // This injected JMSContext (Connection + Session) should not be seen as a complete (JTA) transactional context,
     // but (in CDI terms) the JMSContext is TransactionScoped
     // (see https://jakarta.ee/specifications/messaging/3.1/jakarta-messaging-spec-3.1#use-of-jakarta-messaging-api-in-jakarta-ee-applications).
@@ -71,6 +102,68 @@ public class MessageStoringAndForwardingMessageListener implements MessageListen
     @Inject
     private MessageService messageService;
 
+    @Inject
+    @ConfigProperty(name = "mdbexample.forwarding.mode", defaultValue = "XA")
+    private ForwardingMode forwardingMode;
+
+    // If absent, deduplication is only enabled in forwarding mode OUTBOX
+    @Inject
+    @ConfigProperty(name = "mdbexample.deduplication.enabled")
+    private Optional<Boolean> deduplicationEnabledSetting;
+
+    // String property holding a business key to deduplicate on; if absent, the JMSMessageID is used
+    @Inject
+    @ConfigProperty(name = "mdbexample.deduplication.key-property")
+    private Optional<String> deduplicationKeyProperty;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    // Messages with the same value for this string property, if configured, are processed one at a time
+    @Inject
+    @ConfigProperty(name = "mdbexample.storing-listener.key-lock-property")
+    private Optional<String> keyLockProperty;
+
+    @Inject
+    private MessageKeyLocks messageKeyLocks;
+
+    @Inject
+    private PoisonMessageHandler poisonMessageHandler;
+
+    @Inject
+    private MessageRouter messageRouter;
+
+    @Inject
+    private StartupMetrics startupMetrics;
+
+    // Larger binary payloads are dead-lettered at once (see MessagePayloadDao)
+    @Inject
+    @ConfigProperty(name = "mdbexample.payload.max-size", defaultValue = "16777216")
+    private long maxPayloadSize;
+
+    @Inject
+    private LoadTestRecorder loadTestRecorder;
+
+    @Inject
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private MessageListenerMetrics metrics;
+
+    private MessageRoutingStage routingStage;
+
+    private boolean deduplicationEnabled;
+
+    @PostConstruct
+    void init() {
+        deduplicationEnabled = deduplicationEnabledSetting.orElse(forwardingMode == ForwardingMode.OUTBOX);
+        metrics = new MessageListenerMetrics(
+                metricRegistry, transactionSynchronizationRegistry, LISTENER_NAME, loadTestRecorder);
+        routingStage = new MessageRoutingStage(messageRouter, metrics);
+    }
+
     @Override
     // TransactionAttribute annotation value and even annotation itself can be left implicit, since this is the default
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
@@ -79,6 +172,7 @@ public class MessageStoringAndForwardingMessageListener implements MessageListen
         // for a similar example, where sending the message occurs in the same transaction running method onMessage.
 
         logger.info("Entering MessageStoringAndForwardingMessageListener.onMessage");
+        startupMetrics.recordMessageReceived();
 
         Objects.requireNonNull(jmsContext, "JMSContext must be non-null");
         Objects.requireNonNull(messageDrivenContext, "MessageDrivenContext must be non-null");
@@ -87,27 +181,157 @@ public class MessageStoringAndForwardingMessageListener implements MessageListen
 
         logger.info("JMSContext: " + jmsContext);
 
-        try {
-            if (message instanceof TextMessage textMessage) {
-                String messageText = textMessage.getText();
-
-                logger.info("Message payload: " + messageText);
-
-                // Improve by getting the timestamp from the JMS message
-                var msg = messageService.createMessage(new MessageData(Instant.now(), messageText));
+        // The total processing time and the transaction outcome are only known after the transaction completed
+        long startNanos = System.nanoTime();
+        metrics.recordAfterCompletion(message, startNanos);
 
-                logger.info("Saved message payload: " + msg.messageText());
-
-                jmsContext.createProducer().send(copyQueue, messageText);
+        try {
+            if (poisonMessageHandler.isPoisonMessage(message)) {
+                // Do not even try again; just move the message out of the way
+                logger.warning("Poison message " + message.getJMSMessageID() + ". Moving it to the dead-letter queue.");
+                poisonMessageHandler.sendToDeadLetterQueue(jmsContext, message, LISTENER_NAME);
+                metrics.recordDeadLettered();
             } else {
-                logger.warning("Unsupported message type: " + message.getClass().getName());
+                processMessage(message);
             }
         } catch (JMSException e) {
             logger.warning("JMSException caught: " + e);
+            poisonMessageHandler.recordFailure(message, e);
             messageDrivenContext.setRollbackOnly();
             // No (unchecked) exception thrown
+        } catch (InterruptedException e) {
+            logger.warning("Interrupted while waiting for a lock or permit");
+            Thread.currentThread().interrupt();
+            messageDrivenContext.setRollbackOnly();
+        } catch (RuntimeException e) {
+            // E.g. a database failure; the container rolls back the transaction
+            poisonMessageHandler.recordFailure(message, e);
+            throw e;
         }
 
         logger.info("Leaving MessageStoringAndForwardingMessageListener.onMessage (without throwing any exceptions)");
     }
+
+    private Optional<String> getDeduplicationKey(Message message) throws JMSException {
+        if (!deduplicationEnabled) {
+            return Optional.empty();
+        }
+        if (deduplicationKeyProperty.isPresent()) {
+            return Optional.ofNullable(message.getStringProperty(deduplicationKeyProperty.get()));
+        }
+        return Optional.ofNullable(message.getJMSMessageID());
+    }
+
+    private void processMessage(Message message) throws JMSException, InterruptedException {
+        Optional<String> deduplicationKey = getDeduplicationKey(message);
+
+        if (!lockMessageKey(message)) {
+            logger.warning("Timeout waiting for the lock on the message key. Rolling back.");
+            messageDrivenContext.setRollbackOnly();
+        } else if (!concurrencyLimiter.acquireUntilTransactionCompletion()) {
+            // Backpressure: the database is too slow to take on this message now
+            logger.warning("Timeout waiting for a concurrency permit. Rolling back.");
+            messageDrivenContext.setRollbackOnly();
+        } else if (deduplicationKey.isPresent() &&
+                messageService.isDuplicate(deduplicationKey.get(), message.getJMSRedelivered())) {
+            // Already stored and forwarded, so just consume the message
+            logger.info("Skipping duplicate message with key " + deduplicationKey.get());
+            metrics.recordDuplicate();
+        } else if (message instanceof TextMessage textMessage) {
+            long phaseStartNanos = System.nanoTime();
+            String messageText = textMessage.getText();
+            metrics.recordPhase(MessageListenerMetrics.Phase.TEXT_EXTRACTION, phaseStartNanos);
+
+            logger.info("Message payload: " + messageText);
+
+            // Improve by getting the timestamp from the JMS message
+            var messageData = new MessageData(Instant.now(), messageText);
+
+            if (forwardingMode == ForwardingMode.OUTBOX) {
+                // Committed separately, with outbox entries for the copy queue and the routed destinations;
+                // the OutboxRelay does the forwarding
+                List<String> routedDestinations = routingStage.selectDestinationNames(message);
+
+                phaseStartNanos = System.nanoTime();
+                concurrencyLimiter.recordStoreStart(phaseStartNanos);
+                var msg = messageService.createMessageWithOutboxEntries(messageData, routedDestinations, deduplicationKey);
+                metrics.recordPhase(MessageListenerMetrics.Phase.STORE, phaseStartNanos);
+
+                logger.info("Saved message payload (with outbox entries): " + msg.messageText());
+            } else {
+                phaseStartNanos = System.nanoTime();
+                concurrencyLimiter.recordStoreStart(phaseStartNanos);
+                var msg = messageService.createMessage(messageData, deduplicationKey);
+                metrics.recordPhase(MessageListenerMetrics.Phase.STORE, phaseStartNanos);
+
+                logger.info("Saved message payload: " + msg.messageText());
+
+                phaseStartNanos = System.nanoTime();
+                jmsContext.createProducer().send(copyQueue, messageText);
+                metrics.recordPhase(MessageListenerMetrics.Phase.SEND, phaseStartNanos);
+
+                routingStage.routeMessage(jmsContext, message);
+            }
+            metrics.recordProcessed();
+        } else if (message instanceof BytesMessage bytesMessage) {
+            // The payload is streamed from the message body into the database, without materializing it on the heap
+            long payloadLength = bytesMessage.getBodyLength();
+            logger.info("Binary message payload of " + payloadLength + " bytes");
+
+            if (payloadLength > maxPayloadSize) {
+                // Retrying would not help, so the message is moved out of the way immediately
+                logger.warning("Payload of message " + message.getJMSMessageID() +
+                        " too large. Moving it to the dead-letter queue.");
+                poisonMessageHandler.recordFailure(message, new IllegalArgumentException(
+                        "Payload of " + payloadLength + " bytes exceeds the maximum of " + maxPayloadSize + " bytes"));
+                poisonMessageHandler.sendToDeadLetterQueue(jmsContext, message, LISTENER_NAME);
+                metrics.recordDeadLettered();
+                return;
+            }
+
+            var timestamp = Instant.now();
+            var payload = new BytesMessageInputStream(bytesMessage);
+            List<String> routedDestinations =
+                    (forwardingMode == ForwardingMode.OUTBOX) ? routingStage.selectDestinationNames(message) : List.of();
+
+            long phaseStartNanos = System.nanoTime();
+            concurrencyLimiter.recordStoreStart(phaseStartNanos);
+            var msg = (forwardingMode == ForwardingMode.OUTBOX) ?
+                    messageService.createBinaryMessageWithOutboxEntries(
+                            timestamp, payload, payloadLength, routedDestinations, deduplicationKey) :
+                    messageService.createBinaryMessage(timestamp, payload, payloadLength, deduplicationKey);
+            metrics.recordPhase(MessageListenerMetrics.Phase.STORE, phaseStartNanos);
+
+            logger.info("Saved binary message payload of message " + msg.id());
+
+            if (forwardingMode != ForwardingMode.OUTBOX) {
+                // The received message itself is forwarded, so its body is not copied into a new message
+                bytesMessage.reset();
+                phaseStartNanos = System.nanoTime();
+                jmsContext.createProducer().send(copyQueue, bytesMessage);
+                metrics.recordPhase(MessageListenerMetrics.Phase.SEND, phaseStartNanos);
+
+                routingStage.routeMessage(jmsContext, message);
+            }
+            metrics.recordProcessed();
+        } else {
+            logger.warning("Unsupported message type: " + message.getClass().getName());
+            metrics.recordUnsupportedType();
+        }
+    }
+
+    /**
+     * Locks the key of the message, if a key property is configured and the message has it, until the transaction
+     * has completed. Returns false if the lock could not be obtained in time. See {@link MessageKeyLocks}.
+     */
+    private boolean lockMessageKey(Message message) throws JMSException, InterruptedException {
+        if (keyLockProperty.isEmpty()) {
+            return true;
+        }
+        Optional<String> key = Optional.ofNullable(message.getStringProperty(keyLockProperty.get()));
+        if (key.isEmpty()) {
+            return true;
+        }
+        return messageKeyLocks.lockUntilTransactionCompletion(LISTENER_NAME, key.get());
+    }
 }
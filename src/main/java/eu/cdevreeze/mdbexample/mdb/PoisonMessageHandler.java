@@ -0,0 +1,185 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.mdb;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.MapMessage;
+import jakarta.jms.Message;
+import jakarta.jms.MessageEOFException;
+import jakarta.jms.ObjectMessage;
+import jakarta.jms.Queue;
+import jakarta.jms.StreamMessage;
+import jakarta.jms.TextMessage;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.time.Instant;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Handling of poison messages, i.e. messages whose processing fails again and again. Based on the JMSXDeliveryCount
+ * of a message, it recognizes messages that reached the maximum delivery count, which should be sent to the
+ * dead-letter queue (with failure metadata as message properties), without processing them (and touching the
+ * database) again.
+ * <p>
+ * Redeliveries are not delayed here, because waiting inside method "onMessage" would keep the listener thread and
+ * its transaction occupied. Limiting (and, where the provider supports it, delaying) redeliveries is left to the
+ * messaging provider. For IBM MQ, these are the backout threshold (BOTHRESH) and backout requeue queue (BOQNAME) of
+ * the input queue, which the resource adapter honors. Keep the maximum delivery count here below that threshold, so that the dead-lettered message
+ * carries the failure metadata.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class PoisonMessageHandler {
+
+    private static final Logger logger = Logger.getLogger(PoisonMessageHandler.class.getName());
+
+    public static final String ORIGINAL_DESTINATION_PROPERTY = "MdbExampleOriginalDestination";
+    public static final String ORIGINAL_MESSAGE_ID_PROPERTY = "MdbExampleOriginalMessageId";
+    public static final String DELIVERY_COUNT_PROPERTY = "MdbExampleDeliveryCount";
+    public static final String LISTENER_PROPERTY = "MdbExampleListener";
+    public static final String LAST_FAILURE_PROPERTY = "MdbExampleLastFailure";
+    public static final String DEAD_LETTER_TIME_PROPERTY = "MdbExampleDeadLetterTime";
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.poison.max-delivery-count", defaultValue = "5")
+    private int maxDeliveryCount;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.poison.dead-letter-queue", defaultValue = "jms/MdbExampleDeadLetterQueue")
+    private String deadLetterQueueName;
+
+    private Queue deadLetterQueue;
+
+    // Last failure per JMSMessageID, to be added to the message when it is dead-lettered
+    private Cache<String, String> lastFailures;
+
+    @PostConstruct
+    void init() {
+        try {
+            deadLetterQueue = InitialContext.doLookup(deadLetterQueueName);
+        } catch (NamingException e) {
+            throw new IllegalStateException("Dead-letter queue '" + deadLetterQueueName + "' not found", e);
+        }
+        lastFailures = CacheBuilder.newBuilder().maximumSize(10_000).build();
+    }
+
+    /**
+     * Returns true if the message reached the maximum delivery count, so it should be dead-lettered.
+     */
+    public boolean isPoisonMessage(Message message) throws JMSException {
+        return getDeliveryCount(message) >= maxDeliveryCount;
+    }
+
+    /**
+     * Remembers the failure of processing the message, to be added as metadata if it is dead-lettered later.
+     * Any exception leading to a rollback should be recorded, not just JMSExceptions.
+     */
+    public void recordFailure(Message message, Exception failure) {
+        try {
+            String messageId = message.getJMSMessageID();
+            if (messageId != null) {
+                lastFailures.put(messageId, String.valueOf(failure));
+            }
+        } catch (JMSException e) {
+            logger.warning("Could not record failure of message: " + e);
+        }
+    }
+
+    /**
+     * Sends a copy of the message, with failure metadata as extra properties, to the dead-letter queue,
+     * using the given JMSContext (and therefore in the current transaction). The body is copied for all
+     * JMS message types, so no payload is lost.
+     */
+    public void sendToDeadLetterQueue(JMSContext jmsContext, Message message, String listenerName) throws JMSException {
+        Message deadLetter = copyBody(jmsContext, message);
+
+        Enumeration<?> propertyNames = message.getPropertyNames();
+        while (propertyNames.hasMoreElements()) {
+            String propertyName = String.valueOf(propertyNames.nextElement());
+            // JMSX properties and provider-specific JMS_ properties (such as JMS_IBM_*) are set by the JMS provider,
+            // and cannot all be set by the application
+            if (!propertyName.startsWith("JMSX") && !propertyName.startsWith("JMS_")) {
+                deadLetter.setObjectProperty(propertyName, message.getObjectProperty(propertyName));
+            }
+        }
+        deadLetter.setStringProperty(ORIGINAL_DESTINATION_PROPERTY, String.valueOf(message.getJMSDestination()));
+        deadLetter.setStringProperty(ORIGINAL_MESSAGE_ID_PROPERTY, message.getJMSMessageID());
+        deadLetter.setIntProperty(DELIVERY_COUNT_PROPERTY, getDeliveryCount(message));
+        deadLetter.setStringProperty(LISTENER_PROPERTY, listenerName);
+        deadLetter.setStringProperty(DEAD_LETTER_TIME_PROPERTY, Instant.now().toString());
+        String lastFailure = Optional.ofNullable(message.getJMSMessageID()).map(lastFailures::getIfPresent).orElse(null);
+        if (lastFailure != null) {
+            deadLetter.setStringProperty(LAST_FAILURE_PROPERTY, lastFailure);
+        }
+
+        jmsContext.createProducer().send(deadLetterQueue, deadLetter);
+    }
+
+    private static Message copyBody(JMSContext jmsContext, Message message) throws JMSException {
+        if (message instanceof TextMessage textMessage) {
+            return jmsContext.createTextMessage(textMessage.getText());
+        } else if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = jmsContext.createBytesMessage();
+            byte[] body = message.getBody(byte[].class);
+            if (body != null) {
+                bytesMessage.writeBytes(body);
+            }
+            return bytesMessage;
+        } else if (message instanceof StreamMessage streamMessage) {
+            // Copied field by field, keeping the field types; the received message is read from the start
+            StreamMessage copy = jmsContext.createStreamMessage();
+            streamMessage.reset();
+            try {
+                while (true) {
+                    copy.writeObject(streamMessage.readObject());
+                }
+            } catch (MessageEOFException e) {
+                // End of the stream reached
+            }
+            return copy;
+        } else if (message instanceof MapMessage mapMessage) {
+            MapMessage copy = jmsContext.createMapMessage();
+            Enumeration<?> names = mapMessage.getMapNames();
+            while (names.hasMoreElements()) {
+                String name = String.valueOf(names.nextElement());
+                copy.setObject(name, mapMessage.getObject(name));
+            }
+            return copy;
+        } else if (message instanceof ObjectMessage objectMessage) {
+            return jmsContext.createObjectMessage(objectMessage.getObject());
+        } else {
+            // A message without body
+            return jmsContext.createMessage();
+        }
+    }
+
+    private static int getDeliveryCount(Message message) throws JMSException {
+        // Mandatory in JMS 2.0; it starts at 1 for the first delivery
+        return message.propertyExists("JMSXDeliveryCount") ? message.getIntProperty("JMSXDeliveryCount") : 1;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Immutable report of a load test run (see LoadTestRecorder), taken at "reportTime". The message counts only
+ * include messages sent during the run. The key count is 0 for a run without message keys.
+ *
+ * @author Chris de Vreeze
+ */
+public record LoadTestReport(
+        long runId,
+        Instant startTime,
+        Instant reportTime,
+        boolean active,
+        int keyCount,
+        long sentCount,
+        double sendRatePerSecond,
+        long drainedCount,
+        List<ListenerResult> listenerResults
+) {
+
+    /**
+     * Results of one message listener. The throughput is the number of committed messages per second, from the start
+     * of the run until the last commit. The latencies are end-to-end: from sending the message (its JMSTimestamp)
+     * until the completion of the listener's transaction that consumed it. Rollbacks include redeliveries.
+     * The out-of-order count (only for keyed runs) is the number of messages committed after a message of the same
+     * key that was sent later.
+     */
+    public record ListenerResult(
+            String listenerName,
+            long committedCount,
+            long rolledBackCount,
+            long outOfOrderCount,
+            double messagesPerSecond,
+            Duration p50Latency,
+            Duration p99Latency,
+            Duration maxLatency
+    ) {
+    }
+}
@@ -17,9 +17,12 @@
 package eu.cdevreeze.mdbexample.model;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
- * Immutable Message record.
+ * Immutable Message record. The message text is null for messages with a binary payload, which is stored
+ * separately (see MessageService.createBinaryMessage).
  *
  * @author Chris de Vreeze
  */
@@ -28,4 +31,12 @@ public record Message(
         Instant timestamp,
         String messageText
 ) {
+
+    /**
+     * Constructor taking the attribute types of the Message JPA entity, which are UTC-based, to be used in
+     * JPQL constructor expressions.
+     */
+    public Message(Long id, LocalDateTime timestamp, String messageText) {
+        this(id.longValue(), timestamp.toInstant(ZoneOffset.UTC), messageText);
+    }
 }
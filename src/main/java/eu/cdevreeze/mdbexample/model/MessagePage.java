@@ -0,0 +1,33 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.OptionalLong;
+
+/**
+ * Immutable page of Message records, ordered by ID. If there may be more messages after this page,
+ * the "next after ID" is the (keyset pagination) cursor to use for retrieving the next page.
+ *
+ * @author Chris de Vreeze
+ */
+public record MessagePage(
+        ImmutableList<Message> messages,
+        OptionalLong nextAfterId
+) {
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.time.Instant;
+
+/**
+ * Immutable snapshot of the message statistics of this application instance, since "since". Message sizes are
+ * in characters for text messages, and in bytes for binary messages.
+ *
+ * @author Chris de Vreeze
+ */
+public record MessageStatisticsSnapshot(
+        Instant since,
+        long totalCount,
+        long totalSize,
+        long maxSize,
+        ImmutableList<PeriodCount> perMinute,
+        ImmutableList<PeriodCount> perHour,
+        ImmutableList<SizeClassCount> sizeDistribution
+) {
+
+    /**
+     * Number and total size of the messages stored in the period starting at "start".
+     */
+    public record PeriodCount(Instant start, long count, long totalSize) {
+    }
+
+    /**
+     * Number of stored messages with a size of at most "maxSize", but larger than the maximum size of the
+     * preceding size class.
+     */
+    public record SizeClassCount(long maxSize, long count) {
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Immutable status of one queue, as found by checking it at "checkTime". The depth is a lower bound if
+ * "depthCapped" is true (browsing stopped at the configured maximum). The oldest message timestamp is absent
+ * for an empty queue. If the check failed, there is an error message, and the depth is absent (unknown), rather
+ * than zero.
+ *
+ * @author Chris de Vreeze
+ */
+public record QueueStatus(
+        String queueName,
+        Optional<Long> depth,
+        boolean depthCapped,
+        Optional<Instant> oldestMessageTimestamp,
+        Instant checkTime,
+        Optional<String> errorMessage
+) {
+
+    /**
+     * Returns the age of the oldest message in the queue at the given time, assuming it has not been consumed
+     * since the check.
+     */
+    public Optional<Duration> getOldestMessageAge(Instant now) {
+        return oldestMessageTimestamp.map(timestamp -> Duration.between(timestamp, now));
+    }
+}
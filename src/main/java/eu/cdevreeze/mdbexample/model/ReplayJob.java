@@ -0,0 +1,45 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Immutable replay job record. The job replays the stored messages with IDs in (startAfterId, toId],
+ * optionally restricted to the creation time window [fromTime, toTime), in ID order. The checkpoint is the
+ * ID of the last replayed message (or startAfterId), so a stopped job can be resumed from there.
+ *
+ * @author Chris de Vreeze
+ */
+public record ReplayJob(
+        long id,
+        String destination,
+        long startAfterId,
+        long toId,
+        Optional<Instant> fromTime,
+        Optional<Instant> toTime,
+        long checkpointId,
+        long replayedCount,
+        int batchSize,
+        double ratePerSecond,
+        ReplayJobStatus status,
+        Optional<String> errorMessage,
+        Instant creationTime,
+        Instant updateTime
+) {
+}
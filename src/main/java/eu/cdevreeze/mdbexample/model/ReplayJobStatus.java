@@ -0,0 +1,45 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.model;
+
+/**
+ * Status of a replay job.
+ *
+ * @author Chris de Vreeze
+ */
+public enum ReplayJobStatus {
+
+    /**
+     * The job is replaying messages, or is about to.
+     */
+    RUNNING,
+
+    /**
+     * All selected messages have been replayed.
+     */
+    COMPLETED,
+
+    /**
+     * The job stopped because of an error. It can be resumed from its checkpoint.
+     */
+    FAILED,
+
+    /**
+     * The job was cancelled. It can be resumed from its checkpoint.
+     */
+    CANCELLED
+}
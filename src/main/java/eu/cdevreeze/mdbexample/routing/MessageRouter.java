@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.routing;
+
+import com.google.common.collect.ImmutableList;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.Message;
+import jakarta.jms.Queue;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+import javax.naming.NamingException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Content-based router, sending messages to zero or more destination queues, depending on their properties and
+ * content. The routing rules are listed (in order) in MicroProfile Config property "mdbexample.routing.rules",
+ * and each rule is configured as documented in {@link RoutingRule}. All rules are evaluated, so a message can be
+ * fanned out to multiple destinations, but it is sent at most once to each destination.
+ * <p>
+ * The rules are compiled at startup: destinations are looked up, and regular expressions and JSON pointers are
+ * parsed. Per message, no more than the message text and (if needed) its JSON parse are computed, and that only once.
+ * The received message itself is sent, so its body is not copied, and its properties are kept.
+ * <p>
+ * Alternatively, only the JNDI names of the selected destinations are returned, so that the caller can store
+ * the routed copies in the outbox, to be sent later by the OutboxRelay (forwarding mode OUTBOX).
+ * <p>
+ * The duration of routing decisions (timer "router.decision"), the number of rules, and the number of messages
+ * routed per rule are exposed as metrics, to see what the rules cost as their number grows.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class MessageRouter {
+
+    private static final Logger logger = Logger.getLogger(MessageRouter.class.getName());
+
+    @Inject
+    private Config config;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private ImmutableList<RoutingRule> rules;
+    private ImmutableList<Counter> ruleCounters;
+    private Timer decisionTimer;
+
+    @PostConstruct
+    void init() {
+        List<String> ruleNames =
+                config.getOptionalValues("mdbexample.routing.rules", String.class).orElse(List.of());
+
+        ImmutableList.Builder<RoutingRule> rulesBuilder = ImmutableList.builder();
+        for (String ruleName : ruleNames) {
+            try {
+                rulesBuilder.add(RoutingRule.fromConfig(config, ruleName));
+            } catch (NamingException e) {
+                throw new IllegalStateException("Unknown destination in routing rule " + ruleName, e);
+            }
+        }
+        rules = rulesBuilder.build();
+        ruleCounters = rules.stream()
+                .map(rule -> metricRegistry.counter("router.routed", new Tag("rule", rule.name())))
+                .collect(ImmutableList.toImmutableList());
+        decisionTimer = metricRegistry.timer("router.decision");
+
+        if (!rules.isEmpty()) {
+            logger.info("Routing rules: " + ruleNames);
+        }
+    }
+
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
+    @Gauge(name = "router.ruleCount", unit = MetricUnits.NONE, description = "Number of routing rules")
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * Returns the (distinct) destinations to which the given message must be sent, in rule order.
+     */
+    public List<Queue> selectDestinations(Message message) throws JMSException {
+        return selectRules(message).stream().map(RoutingRule::destination).toList();
+    }
+
+    /**
+     * Returns the JNDI names of the (distinct) destinations to which the given message must be sent, in rule order.
+     */
+    public List<String> selectDestinationNames(Message message) throws JMSException {
+        return selectRules(message).stream().map(RoutingRule::destinationName).toList();
+    }
+
+    /**
+     * Sends the given (received) message to all destinations selected by the routing rules, using the given
+     * JMSContext, so in its transaction. Returns the number of destinations.
+     */
+    public int route(JMSContext jmsContext, Message message) throws JMSException {
+        List<Queue> destinations = selectDestinations(message);
+        if (!destinations.isEmpty()) {
+            if (message instanceof BytesMessage bytesMessage) {
+                // The body may have been read already
+                bytesMessage.reset();
+            }
+            JMSProducer producer = jmsContext.createProducer();
+            for (Queue destination : destinations) {
+                producer.send(destination, message);
+            }
+        }
+        return destinations.size();
+    }
+
+    /**
+     * Returns the matching rules, only keeping the first one of each destination.
+     */
+    private List<RoutingRule> selectRules(Message message) throws JMSException {
+        if (rules.isEmpty()) {
+            return List.of();
+        }
+
+        long startNanos = System.nanoTime();
+        RoutedMessage routedMessage = new RoutedMessage(message);
+        List<RoutingRule> selectedRules = new ArrayList<>(2);
+        for (int i = 0; i < rules.size(); i++) {
+            RoutingRule rule = rules.get(i);
+            if (rule.matches(routedMessage)) {
+                ruleCounters.get(i).inc();
+                if (selectedRules.stream().noneMatch(r -> r.destinationName().equals(rule.destinationName()))) {
+                    selectedRules.add(rule);
+                }
+            }
+        }
+        decisionTimer.update(Duration.ofNanos(System.nanoTime() - startNanos));
+        return selectedRules;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.routing;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.TextMessage;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonReaderFactory;
+import jakarta.json.JsonStructure;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Message being routed, giving routing conditions access to its properties and content. The message text,
+ * and the parsed JSON message text, are computed at most once per message, no matter how many rules need them.
+ *
+ * @author Chris de Vreeze
+ */
+final class RoutedMessage {
+
+    // Each call of Json.createReader looks up the JSON provider, which costs far more than parsing a small message
+    private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(Map.of());
+
+    private final Message message;
+
+    private Optional<String> text;
+    private Optional<JsonStructure> json;
+
+    RoutedMessage(Message message) {
+        this.message = message;
+    }
+
+    String getStringProperty(String name) throws JMSException {
+        return message.getStringProperty(name);
+    }
+
+    /**
+     * Returns the message text, which is absent for non-text messages.
+     */
+    Optional<String> getText() throws JMSException {
+        if (text == null) {
+            text = (message instanceof TextMessage textMessage) ?
+                    Optional.ofNullable(textMessage.getText()) :
+                    Optional.empty();
+        }
+        return text;
+    }
+
+    /**
+     * Returns the message text parsed as JSON object or array, which is absent if the text is no such JSON.
+     */
+    Optional<JsonStructure> getJson() throws JMSException {
+        if (json == null) {
+            json = getText().flatMap(RoutedMessage::parseJson);
+        }
+        return json;
+    }
+
+    private static Optional<JsonStructure> parseJson(String text) {
+        try (JsonReader reader = JSON_READER_FACTORY.createReader(new StringReader(text))) {
+            return Optional.of(reader.read());
+        } catch (JsonException e) {
+            return Optional.empty();
+        }
+    }
+}
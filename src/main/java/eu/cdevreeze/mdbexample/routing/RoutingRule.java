@@ -0,0 +1,114 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.routing;
+
+import com.google.common.collect.ImmutableList;
+import jakarta.jms.JMSException;
+import jakarta.jms.Queue;
+import jakarta.json.Json;
+import jakarta.json.JsonPointer;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import org.eclipse.microprofile.config.Config;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Routing rule, sending messages that match all its conditions to its destination. The rule is "compiled" once,
+ * from MicroProfile Config properties with prefix "mdbexample.routing.rule.&lt;name&gt;.":
+ * <ul>
+ *     <li>"destination": JNDI name of the destination queue (required)</li>
+ *     <li>"property" with "property-value" or "property-pattern": string message property equal to the value,
+ *     or (completely) matching the regular expression</li>
+ *     <li>"text-prefix": message text starting with the prefix</li>
+ *     <li>"json-field" (a JSON pointer, e.g. "/order/status") with "json-value": message text being JSON
+ *     with that value (string, number or boolean) at that location</li>
+ * </ul>
+ * A rule without conditions matches all messages. Text conditions never match binary messages.
+ *
+ * @author Chris de Vreeze
+ */
+record RoutingRule(String name, String destinationName, Queue destination, ImmutableList<Condition> conditions) {
+
+    @FunctionalInterface
+    interface Condition {
+
+        boolean test(RoutedMessage message) throws JMSException;
+    }
+
+    boolean matches(RoutedMessage message) throws JMSException {
+        for (Condition condition : conditions) {
+            if (!condition.test(message)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static RoutingRule fromConfig(Config config, String name) throws NamingException {
+        String prefix = "mdbexample.routing.rule." + name + ".";
+
+        String destinationName = config.getValue(prefix + "destination", String.class);
+        Queue destination = InitialContext.doLookup(destinationName);
+
+        ImmutableList.Builder<Condition> conditions = ImmutableList.builder();
+
+        Optional<String> property = config.getOptionalValue(prefix + "property", String.class);
+        if (property.isPresent()) {
+            String propertyName = property.get();
+            Optional<String> propertyValue = config.getOptionalValue(prefix + "property-value", String.class);
+            Optional<Pattern> propertyPattern =
+                    config.getOptionalValue(prefix + "property-pattern", String.class).map(Pattern::compile);
+
+            if (propertyValue.isPresent()) {
+                String expectedValue = propertyValue.get();
+                conditions.add(message -> expectedValue.equals(message.getStringProperty(propertyName)));
+            } else if (propertyPattern.isPresent()) {
+                Pattern pattern = propertyPattern.get();
+                conditions.add(message -> {
+                    String value = message.getStringProperty(propertyName);
+                    return value != null && pattern.matcher(value).matches();
+                });
+            } else {
+                conditions.add(message -> message.getStringProperty(propertyName) != null);
+            }
+        }
+
+        config.getOptionalValue(prefix + "text-prefix", String.class).ifPresent(textPrefix ->
+                conditions.add(message -> message.getText().map(text -> text.startsWith(textPrefix)).orElse(false)));
+
+        Optional<JsonPointer> jsonField =
+                config.getOptionalValue(prefix + "json-field", String.class).map(Json::createPointer);
+        if (jsonField.isPresent()) {
+            JsonPointer pointer = jsonField.get();
+            String expectedValue = config.getValue(prefix + "json-value", String.class);
+            conditions.add(message -> message.getJson()
+                    .filter(pointer::containsValue)
+                    .map(json -> expectedValue.equals(toText(pointer.getValue(json))))
+                    .orElse(false));
+        }
+
+        return new RoutingRule(name, destinationName, destination, conditions.build());
+    }
+
+    private static String toText(JsonValue value) {
+        return (value instanceof JsonString jsonString) ? jsonString.getString() : value.toString();
+    }
+}
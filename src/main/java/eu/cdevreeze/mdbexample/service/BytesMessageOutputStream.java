@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import eu.cdevreeze.mdbexample.dao.MessagePayloadDao;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+
+/**
+ * OutputStream writing to the body of a (new) BytesMessage, so a stored payload can be streamed from the database
+ * into the message in small chunks, instead of first being copied into one large byte array.
+ *
+ * @author Chris de Vreeze
+ */
+final class BytesMessageOutputStream extends OutputStream {
+
+    private final BytesMessage bytesMessage;
+
+    BytesMessageOutputStream(BytesMessage bytesMessage) {
+        this.bytesMessage = bytesMessage;
+    }
+
+    /**
+     * Creates a BytesMessage containing the stored payload of the message with the given ID, streamed from
+     * the database. Throws a NoSuchElementException if there is no such payload.
+     */
+    static BytesMessage createPayloadMessage(JMSContext jmsContext, MessagePayloadDao messagePayloadDao, long messageId) {
+        BytesMessage bytesMessage = jmsContext.createBytesMessage();
+        try {
+            if (!messagePayloadDao.copyPayload(messageId, new BytesMessageOutputStream(bytesMessage))) {
+                throw new NoSuchElementException("No payload found for message " + messageId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy payload of message " + messageId, e);
+        }
+        return bytesMessage;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            bytesMessage.writeByte((byte) b);
+        } catch (JMSException e) {
+            throw new IOException("Could not write BytesMessage body", e);
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        try {
+            bytesMessage.writeBytes(buffer, offset, length);
+        } catch (JMSException e) {
+            throw new IOException("Could not write BytesMessage body", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.service;
+
+/**
+ * The way MessageStoringAndForwardingMessageListener stores and forwards messages, configured through
+ * MicroProfile Config property "mdbexample.forwarding.mode".
+ *
+ * @author Chris de Vreeze
+ */
+public enum ForwardingMode {
+
+    /**
+     * Storing the message in the database and forwarding it to the copy queue in the listener's own distributed
+     * (XA) transaction, which also covers message receipt. This pays for a 2-phase commit per message.
+     */
+    XA,
+
+    /**
+     * Storing the message together with an outbox entry in a separate local database transaction, leaving the
+     * forwarding to the OutboxRelay, which sends outbox messages in batches. Forwarding is at-least-once:
+     * if the listener transaction rolls back after the database commit, the message is stored and forwarded again
+     * on redelivery.
+     */
+    OUTBOX
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.mdbexample.model.LoadTestReport;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recorder of the current load test run (see LoadTestRunner), keeping the number of sent and drained messages,
+ * and per message listener the committed and rolled back messages and the end-to-end latencies.
+ * The message listeners report each transaction outcome, but outside a run that costs no more than one volatile read.
+ * Messages sent before the start of the current run (according to their JMSTimestamp) are ignored.
+ * <p>
+ * The latencies are kept as is (up to "maxLatencySamples" per listener), so the percentiles in the report are exact.
+ * <p>
+ * In a keyed run, each message has a key (JMSXGroupID) and a sequence number per key (property
+ * "MdbExampleLoadTestSequence"), in sending order. Per listener, the committed messages of each key are then checked
+ * to be in sequence order. A message committed after a message of the same key with a higher sequence number (or
+ * committed twice) counts as out of order. Gaps (e.g. dead-lettered messages) are not counted.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class LoadTestRecorder {
+
+    public static final String KEY_PROPERTY = "JMSXGroupID";
+
+    public static final String SEQUENCE_PROPERTY = "MdbExampleLoadTestSequence";
+
+    private final AtomicLong runIdSequence = new AtomicLong();
+
+    private volatile Run currentRun;
+
+    /**
+     * Starts a new run, replacing the current one (if any), and returns its ID.
+     */
+    public long startRun(int producerCount, int maxLatencySamples, int keyCount) {
+        Run run = new Run(runIdSequence.incrementAndGet(), producerCount, maxLatencySamples, keyCount);
+        currentRun = run;
+        return run.id;
+    }
+
+    /**
+     * Stops the current run, if it has the given ID. Its results remain available until the next run starts.
+     */
+    public void stopRun(long runId) {
+        Run run = currentRun;
+        if (run != null && run.id == runId) {
+            run.active = false;
+        }
+    }
+
+    public Optional<Long> findActiveRunId() {
+        Run run = currentRun;
+        return (run != null && run.active) ? Optional.of(run.id) : Optional.empty();
+    }
+
+    public boolean isActive(long runId) {
+        Run run = currentRun;
+        return run != null && run.id == runId && run.active;
+    }
+
+    /**
+     * Returns true if all producers of the run have sent all their messages (or have stopped).
+     */
+    public boolean isSendingCompleted(long runId) {
+        Run run = currentRun;
+        return run == null || run.id != runId || run.remainingProducers.get() <= 0;
+    }
+
+    public void recordSent(long runId, int count) {
+        Run run = currentRun;
+        if (run != null && run.id == runId) {
+            run.sentCount.add(count);
+            run.lastSendNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+    }
+
+    public void recordProducerCompleted(long runId) {
+        Run run = currentRun;
+        if (run != null && run.id == runId) {
+            run.remainingProducers.decrementAndGet();
+        }
+    }
+
+    public void recordDrained(long runId, int count) {
+        Run run = currentRun;
+        if (run != null && run.id == runId) {
+            run.drainedCount.add(count);
+        }
+    }
+
+    /**
+     * Returns the key and sequence number of the given message, if a keyed run is active and the message has them.
+     * To be called while processing the message, before passing the result to method "recordProcessed".
+     * Outside a keyed run, this costs no more than one volatile read.
+     */
+    public Optional<KeySequence> findKeySequence(Message message) {
+        Run run = currentRun;
+        if (run == null || !run.active || run.keyCount == 0) {
+            return Optional.empty();
+        }
+        try {
+            String key = message.getStringProperty(KEY_PROPERTY);
+            return (key != null && message.propertyExists(SEQUENCE_PROPERTY)) ?
+                    Optional.of(new KeySequence(key, message.getLongProperty(SEQUENCE_PROPERTY))) :
+                    Optional.empty();
+        } catch (JMSException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records the transaction outcome of a message listener that consumed a message with the given JMSTimestamp
+     * (0 if unknown) and the given key and sequence number (see method "findKeySequence"). Messages sent outside
+     * the current active run are ignored.
+     */
+    public void recordProcessed(
+            String listenerName, long jmsTimestamp, boolean committed, Optional<KeySequence> keySequence) {
+        Run run = currentRun;
+        if (run == null || !run.active || jmsTimestamp < run.startTime.toEpochMilli()) {
+            return;
+        }
+        ListenerRecording recording = run.listenerRecordings.computeIfAbsent(
+                listenerName, name -> new ListenerRecording(run.maxLatencySamples));
+        if (committed) {
+            recording.recordCommit(System.currentTimeMillis() - jmsTimestamp);
+            keySequence.ifPresent(recording::recordKeySequence);
+        } else {
+            recording.rolledBackCount.increment();
+        }
+    }
+
+    /**
+     * Returns the report of the current (or last) run, if any.
+     */
+    public Optional<LoadTestReport> getReport() {
+        Run run = currentRun;
+        if (run == null) {
+            return Optional.empty();
+        }
+
+        long nowNanos = System.nanoTime();
+        long sentCount = run.sentCount.sum();
+        double sendSeconds = toSeconds(run.lastSendNanos.get() - run.startNanos);
+
+        return Optional.of(new LoadTestReport(
+                run.id,
+                run.startTime,
+                Instant.now(),
+                run.active,
+                run.keyCount,
+                sentCount,
+                (sendSeconds > 0) ? sentCount / sendSeconds : 0,
+                run.drainedCount.sum(),
+                run.listenerRecordings.entrySet().stream()
+                        .map(entry -> entry.getValue().toResult(entry.getKey(), run.startNanos, nowNanos))
+                        .sorted(Comparator.comparing(LoadTestReport.ListenerResult::listenerName))
+                        .collect(ImmutableList.toImmutableList())
+        ));
+    }
+
+    /**
+     * Key (JMSXGroupID) and per-key sequence number of a message sent in a keyed run.
+     */
+    public record KeySequence(String key, long sequence) {
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    private static final class Run {
+
+        private final long id;
+        private final Instant startTime = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final int maxLatencySamples;
+        private final int keyCount;
+        private final AtomicInteger remainingProducers;
+        private final LongAdder sentCount = new LongAdder();
+        private final AtomicLong lastSendNanos = new AtomicLong(startNanos);
+        private final LongAdder drainedCount = new LongAdder();
+        private final ConcurrentMap<String, ListenerRecording> listenerRecordings = new ConcurrentHashMap<>();
+        private volatile boolean active = true;
+
+        private Run(long id, int producerCount, int maxLatencySamples, int keyCount) {
+            this.id = id;
+            this.maxLatencySamples = maxLatencySamples;
+            this.keyCount = keyCount;
+            this.remainingProducers = new AtomicInteger(producerCount);
+        }
+    }
+
+    private static final class ListenerRecording {
+
+        // Latencies in milliseconds, filled up to "latencyCount"
+        private final long[] latencies;
+        private final AtomicInteger latencyCount = new AtomicInteger();
+        private final LongAdder committedCount = new LongAdder();
+        private final LongAdder rolledBackCount = new LongAdder();
+        private final AtomicLong lastCommitNanos = new AtomicLong();
+        // Per key, the highest sequence number committed so far
+        private final ConcurrentMap<String, Long> lastSequences = new ConcurrentHashMap<>();
+        private final LongAdder outOfOrderCount = new LongAdder();
+
+        private ListenerRecording(int maxLatencySamples) {
+            this.latencies = new long[maxLatencySamples];
+        }
+
+        private void recordCommit(long latencyMillis) {
+            committedCount.increment();
+            lastCommitNanos.accumulateAndGet(System.nanoTime(), Math::max);
+
+            int index = latencyCount.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[index] = latencyMillis;
+            }
+        }
+
+        private void recordKeySequence(KeySequence keySequence) {
+            lastSequences.merge(keySequence.key(), keySequence.sequence(), (last, sequence) -> {
+                if (sequence <= last) {
+                    outOfOrderCount.increment();
+                }
+                return Math.max(last, sequence);
+            });
+        }
+
+        private LoadTestReport.ListenerResult toResult(String listenerName, long startNanos, long nowNanos) {
+            // Latencies being written concurrently may still be missing (i.e. 0); that is fine for a report
+            long[] sortedLatencies = Arrays.copyOf(latencies, Math.min(latencyCount.get(), latencies.length));
+            Arrays.sort(sortedLatencies);
+
+            long committed = committedCount.sum();
+            double seconds = toSeconds(Math.min(lastCommitNanos.get(), nowNanos) - startNanos);
+
+            return new LoadTestReport.ListenerResult(
+                    listenerName,
+                    committed,
+                    rolledBackCount.sum(),
+                    outOfOrderCount.sum(),
+                    (seconds > 0) ? committed / seconds : 0,
+                    percentile(sortedLatencies, 0.50),
+                    percentile(sortedLatencies, 0.99),
+                    percentile(sortedLatencies, 1.0)
+            );
+        }
+
+        private static Duration percentile(long[] sortedLatencies, double fraction) {
+            if (sortedLatencies.length == 0) {
+                return Duration.ZERO;
+            }
+            // Nearest-rank percentile
+            int rank = (int) Math.ceil(fraction * sortedLatencies.length);
+            return Duration.ofMillis(sortedLatencies[Math.max(rank, 1) - 1]);
+        }
+    }
+}
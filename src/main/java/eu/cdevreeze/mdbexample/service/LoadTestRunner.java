@@ -0,0 +1,159 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import jakarta.annotation.Resource;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import jakarta.jms.*;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runner of load test producers and drainers, see LoadTestRecorder. Each producer sends its share of the messages
+ * of a run to a queue, at its share of the total rate. The drainers consume the queues the message listeners forward
+ * to, so these queues do not fill up during long runs. Both run asynchronously, in container-managed threads, and stop
+ * when the run is stopped; the drainers also stop once sending has completed and their queue has been empty for a while.
+ * <p>
+ * The messages are sent and received without transaction, each in its own JMS session, so the measured end-to-end
+ * latencies (see MessageListenerMetrics) only include the processing by the message listeners themselves.
+ * <p>
+ * In a keyed run, each key belongs to one producer, which sends the messages of its keys round-robin, numbering them
+ * per key. So the sending order of the messages of a key is well-defined (see LoadTestRecorder).
+ *
+ * @author Chris de Vreeze
+ */
+@Stateless
+public class LoadTestRunner {
+
+    private static final Logger logger = Logger.getLogger(LoadTestRunner.class.getName());
+
+    private static final long POLL_TIMEOUT_MILLIS = 1000L;
+
+    private static final int MAX_IDLE_POLLS = 5;
+
+    // Sent counts are reported in chunks, to keep the recorder out of the way of the producers
+    private static final int REPORT_CHUNK_SIZE = 100;
+
+    private static final char[] BODY_CHARACTERS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ".toCharArray();
+
+    @Resource(lookup = "jms/connectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Inject
+    private LoadTestRecorder loadTestRecorder;
+
+    /**
+     * Sends "messageCount" messages of "messageSize" characters (or bytes, if "binary") to the given queue,
+     * at (at most) the given rate. If any keys are given, the messages are spread over them round-robin, and get
+     * the key and their sequence number per key as properties.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void runProducer(
+            long runId,
+            String queueName,
+            int messageCount,
+            double ratePerSecond,
+            int messageSize,
+            boolean binary,
+            List<String> keys) {
+        RateLimiter rateLimiter = RateLimiter.create(ratePerSecond);
+        String body = createBody(messageSize);
+        byte[] bytesBody = body.getBytes(StandardCharsets.US_ASCII);
+        long[] keySequences = new long[keys.size()];
+
+        try (JMSContext context = connectionFactory.createContext()) {
+            Queue queue = InitialContext.doLookup(queueName);
+            JMSProducer producer = context.createProducer();
+
+            int sent = 0;
+            while (sent < messageCount && loadTestRecorder.isActive(runId)) {
+                rateLimiter.acquire();
+                if (!keys.isEmpty()) {
+                    int keyIndex = sent % keys.size();
+                    keySequences[keyIndex]++;
+                    producer.setProperty(LoadTestRecorder.KEY_PROPERTY, keys.get(keyIndex));
+                    producer.setProperty(LoadTestRecorder.SEQUENCE_PROPERTY, keySequences[keyIndex]);
+                }
+                if (binary) {
+                    producer.send(queue, bytesBody);
+                } else {
+                    producer.send(queue, body);
+                }
+                sent++;
+                if (sent % REPORT_CHUNK_SIZE == 0) {
+                    loadTestRecorder.recordSent(runId, REPORT_CHUNK_SIZE);
+                }
+            }
+            loadTestRecorder.recordSent(runId, sent % REPORT_CHUNK_SIZE);
+            logger.info("Load test " + runId + ": sent " + sent + " message(s) to " + queueName);
+        } catch (NamingException | JMSRuntimeException e) {
+            logger.log(Level.WARNING, "Load test " + runId + ": producer for " + queueName + " failed", e);
+        } finally {
+            loadTestRecorder.recordProducerCompleted(runId);
+        }
+    }
+
+    /**
+     * Consumes (and discards) the messages on the given queue, until the run is stopped, or sending has completed
+     * and the queue has been empty for a while.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void runDrainer(long runId, String queueName) {
+        try (JMSContext context = connectionFactory.createContext(JMSContext.DUPS_OK_ACKNOWLEDGE)) {
+            Queue queue = InitialContext.doLookup(queueName);
+
+            try (JMSConsumer consumer = context.createConsumer(queue)) {
+                int idlePolls = 0;
+                while (loadTestRecorder.isActive(runId) &&
+                        !(loadTestRecorder.isSendingCompleted(runId) && idlePolls >= MAX_IDLE_POLLS)) {
+                    if (consumer.receive(POLL_TIMEOUT_MILLIS) == null) {
+                        idlePolls++;
+                    } else {
+                        idlePolls = 0;
+                        loadTestRecorder.recordDrained(runId, 1);
+                    }
+                }
+            }
+            logger.info("Load test " + runId + ": stopped draining " + queueName);
+        } catch (NamingException | JMSRuntimeException e) {
+            logger.log(Level.WARNING, "Load test " + runId + ": drainer for " + queueName + " failed", e);
+        }
+    }
+
+    private static String createBody(int messageSize) {
+        // Random text, so that compression of the stored message text (by PostgreSQL TOAST) is realistic
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[messageSize];
+        for (int i = 0; i < messageSize; i++) {
+            chars[i] = BODY_CHARACTERS[random.nextInt(BODY_CHARACTERS.length)];
+        }
+        // Blank messages are rejected by the database
+        chars[0] = 'x';
+        return new String(chars);
+    }
+}
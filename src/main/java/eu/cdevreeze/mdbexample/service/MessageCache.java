@@ -0,0 +1,145 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Bounded, thread-safe read-through cache of immutable Message records, keyed by ID. This is safe
+ * because stored messages never change. Lookups of non-existing IDs are cached as well, but with a (much)
+ * shorter time-to-live, since such a message may still be created by another application instance.
+ * <p>
+ * The cache is only filled after the transaction in which the message was read has committed, so it never
+ * contains data that has been rolled back. Hit, miss, eviction and size counts are exposed as metrics.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class MessageCache {
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.message-cache.maximum-size", defaultValue = "10000")
+    private long maximumSize;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.message-cache.expire-after-write", defaultValue = "PT10M")
+    private Duration expireAfterWrite;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.message-cache.negative-expire-after-write", defaultValue = "PT10S")
+    private Duration negativeExpireAfterWrite;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private Cache<Long, Message> messages;
+    private Cache<Long, Boolean> missingIds;
+
+    @PostConstruct
+    void init() {
+        RemovalListener<Long, Object> evictionCounter = notification -> {
+            if (notification.wasEvicted()) {
+                evictionCount.increment();
+            }
+        };
+
+        messages = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .removalListener(evictionCounter)
+                .build();
+        missingIds = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeExpireAfterWrite)
+                .removalListener(evictionCounter)
+                .build();
+    }
+
+    /**
+     * Returns the cached lookup result for the given ID, if any, and otherwise calls the loader. The loaded
+     * result (found or not) is added to the cache once the current transaction has committed.
+     */
+    public Optional<Message> get(long id, LongFunction<Optional<Message>> loader) {
+        Message cachedMessage = messages.getIfPresent(id);
+        if (cachedMessage != null) {
+            hitCount.increment();
+            return Optional.of(cachedMessage);
+        }
+        if (missingIds.getIfPresent(id) != null) {
+            hitCount.increment();
+            return Optional.empty();
+        }
+
+        missCount.increment();
+        Optional<Message> result = loader.apply(id);
+
+        TransactionCallbacks.afterCommit(transactionSynchronizationRegistry, () ->
+                result.ifPresentOrElse(msg -> messages.put(id, msg), () -> missingIds.put(id, Boolean.TRUE)));
+        return result;
+    }
+
+    /**
+     * Removes any cached "not found" results for the given newly created messages, once the current transaction
+     * has committed. The messages themselves are not added, to keep bulk inserts from flushing the cache.
+     */
+    public void invalidateMissingAfterCommit(Collection<Message> createdMessages) {
+        TransactionCallbacks.afterCommit(transactionSynchronizationRegistry, () ->
+                createdMessages.forEach(msg -> missingIds.invalidate(msg.id())));
+    }
+
+    @Gauge(name = "messageCache.hits", unit = MetricUnits.NONE, description = "Number of message cache hits")
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Gauge(name = "messageCache.misses", unit = MetricUnits.NONE, description = "Number of message cache misses")
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Gauge(name = "messageCache.evictions", unit = MetricUnits.NONE, description = "Number of message cache evictions")
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Gauge(name = "messageCache.size", unit = MetricUnits.NONE, description = "Number of cached message lookups")
+    public long getSize() {
+        return messages.size() + missingIds.size();
+    }
+}
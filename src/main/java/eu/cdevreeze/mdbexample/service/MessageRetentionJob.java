@@ -0,0 +1,216 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import eu.cdevreeze.mdbexample.dao.MessageRetentionDao;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background job enforcing the message retention policy: messages older than "max-age" are removed.
+ * It is triggered every 10 minutes by a (non-persistent) timer, if enabled.
+ * <p>
+ * If the message table is partitioned by day on creation time (see README), the job also creates the daily
+ * partitions for the coming days, and it removes old messages by detaching and dropping entire partitions,
+ * which is cheap and leaves no dead rows behind. Otherwise, old messages are deleted in small batches, each
+ * in its own short transaction, so locks on the message table are held only briefly. In both cases, binary
+ * payloads of removed messages are deleted in batches as well.
+ * <p>
+ * The other growing tables are purged in batches too: the keys in table processed_message older than
+ * "processed-message-max-age" (which only needs to cover the redelivery window of a message), and outbox
+ * messages older than "max-age". The latter should not exist, since the OutboxRelay normally sends them within
+ * seconds, so removing them is logged as a warning.
+ * <p>
+ * The numbers of removed rows and partitions are logged, and counted at the "/metrics" endpoint.
+ *
+ * @author Chris de Vreeze
+ */
+@Singleton
+@Startup
+public class MessageRetentionJob {
+
+    private static final Logger logger = Logger.getLogger(MessageRetentionJob.class.getName());
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.max-age", defaultValue = "P30D")
+    private Duration maxAge;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.processed-message-max-age", defaultValue = "P7D")
+    private Duration processedMessageMaxAge;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.partitions-ahead", defaultValue = "3")
+    private int partitionsAhead;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.batch-size", defaultValue = "1000")
+    private int batchSize;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.retention.max-batches-per-run", defaultValue = "100")
+    private int maxBatchesPerRun;
+
+    @Inject
+    private MessageRetentionDao messageRetentionDao;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Counter messagesRemovedCounter;
+    private Counter payloadsRemovedCounter;
+    private Counter processedMessagesRemovedCounter;
+    private Counter outboxMessagesRemovedCounter;
+    private Counter partitionsDroppedCounter;
+
+    @PostConstruct
+    void init() {
+        messagesRemovedCounter = metricRegistry.counter("retention.messagesRemoved");
+        payloadsRemovedCounter = metricRegistry.counter("retention.payloadsRemoved");
+        processedMessagesRemovedCounter = metricRegistry.counter("retention.processedMessagesRemoved");
+        outboxMessagesRemovedCounter = metricRegistry.counter("retention.outboxMessagesRemoved");
+        partitionsDroppedCounter = metricRegistry.counter("retention.partitionsDropped");
+    }
+
+    @Schedule(minute = "*/10", hour = "*", persistent = false)
+    // No transaction here; each statement runs in its own short local transaction (see MessageRetentionDao)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void enforceRetention() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+            LocalDateTime cutoffTime = now.minus(maxAge);
+
+            if (messageRetentionDao.isMessageTablePartitioned()) {
+                createUpcomingPartitions();
+                dropOldPartitions(cutoffTime);
+            } else {
+                deleteOldMessages(cutoffTime);
+            }
+            deleteOrphanedPayloads();
+            deleteOldProcessedMessages(now.minus(processedMessageMaxAge));
+            deleteOldOutboxMessages(cutoffTime);
+        } catch (RuntimeException e) {
+            // Try again next time
+            logger.log(Level.WARNING, "Enforcing the message retention policy failed", e);
+        }
+    }
+
+    private void createUpcomingPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (int i = 0; i <= partitionsAhead; i++) {
+            messageRetentionDao.createDailyPartition(today.plusDays(i));
+        }
+    }
+
+    private void dropOldPartitions(LocalDateTime cutoffTime) {
+        // Only partitions whose rows are all older than the cutoff time are dropped
+        List<LocalDate> oldDays = messageRetentionDao.findDailyPartitions().stream()
+                .filter(day -> !day.plusDays(1).atStartOfDay().isAfter(cutoffTime))
+                .toList();
+
+        if (oldDays.isEmpty()) {
+            return;
+        }
+        // Detaching concurrently is not possible if there is a default partition
+        boolean concurrently = !messageRetentionDao.hasDefaultPartition();
+
+        for (LocalDate day : oldDays) {
+            long rowCount = messageRetentionDao.dropDailyPartition(day, concurrently);
+            messagesRemovedCounter.inc(rowCount);
+            partitionsDroppedCounter.inc();
+            logger.info("Dropped message partition of " + day + " with " + rowCount + " message(s)");
+        }
+    }
+
+    private void deleteOldMessages(LocalDateTime cutoffTime) {
+        long totalDeleted = deleteInBatches(
+                () -> messageRetentionDao.deleteMessagesCreatedBefore(cutoffTime, batchSize), messagesRemovedCounter);
+
+        if (totalDeleted > 0) {
+            logger.info("Deleted " + totalDeleted + " message(s) created before " + cutoffTime);
+        }
+    }
+
+    private void deleteOrphanedPayloads() {
+        long totalDeleted = deleteInBatches(
+                () -> messageRetentionDao.deleteOrphanedPayloads(batchSize), payloadsRemovedCounter);
+
+        if (totalDeleted > 0) {
+            logger.info("Deleted " + totalDeleted + " payload(s) of removed messages");
+        }
+    }
+
+    private void deleteOldProcessedMessages(LocalDateTime cutoffTime) {
+        long totalDeleted = deleteInBatches(
+                () -> messageRetentionDao.deleteProcessedMessagesBefore(cutoffTime, batchSize),
+                processedMessagesRemovedCounter);
+
+        if (totalDeleted > 0) {
+            logger.info("Deleted " + totalDeleted + " processed message key(s) older than " + cutoffTime);
+        }
+    }
+
+    private void deleteOldOutboxMessages(LocalDateTime cutoffTime) {
+        long totalDeleted = deleteInBatches(
+                () -> messageRetentionDao.deleteOutboxMessagesCreatedBefore(cutoffTime, batchSize),
+                outboxMessagesRemovedCounter);
+
+        if (totalDeleted > 0) {
+            logger.warning("Deleted " + totalDeleted + " outbox message(s) created before " + cutoffTime +
+                    ", which have never been forwarded");
+        }
+    }
+
+    /**
+     * Calls the given batch deletion at most "maxBatchesPerRun" times, until it deletes fewer than "batchSize"
+     * rows, and returns the total number of deleted rows.
+     */
+    private long deleteInBatches(IntSupplier deleteBatch, Counter removedCounter) {
+        long totalDeleted = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            int deleted = deleteBatch.getAsInt();
+            totalDeleted += deleted;
+            removedCounter.inc(deleted);
+
+            if (deleted < batchSize) {
+                break;
+            }
+        }
+        return totalDeleted;
+    }
+}
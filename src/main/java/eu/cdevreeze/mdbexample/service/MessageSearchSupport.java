@@ -0,0 +1,52 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.cdevreeze.mdbexample.service;
+
+import eu.cdevreeze.mdbexample.dao.SchemaDao;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Application-wide holder of whether full-text search on the message text is supported, i.e. whether the message
+ * table has the "search_vector" column (see README). The database metadata is queried only once, on first use,
+ * instead of on every search. So after adding the column, the application must be restarted to use it.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class MessageSearchSupport {
+
+    @Inject
+    private SchemaDao schemaDao;
+
+    private volatile Boolean supported;
+
+    /**
+     * Returns true if the message table has the "search_vector" column. The first call queries the database
+     * metadata, so it must run within a transaction (like the other DAO calls); if that fails, nothing is cached.
+     */
+    public boolean isSupported() {
+        Boolean result = supported;
+        if (result == null) {
+            // Concurrent first calls may all query the metadata, which is harmless
+            result = schemaDao.hasMessageSearchColumn();
+            supported = result;
+        }
+        return result;
+    }
+}
@@ -16,18 +16,35 @@
 
 package eu.cdevreeze.mdbexample.service;
 
+import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.mdbexample.dao.MessageDao;
+import eu.cdevreeze.mdbexample.dao.MessagePayloadDao;
+import eu.cdevreeze.mdbexample.dao.OutboxMessageDao;
+import eu.cdevreeze.mdbexample.dao.ProcessedMessageDao;
 import eu.cdevreeze.mdbexample.entity.MessageEntity;
+import eu.cdevreeze.mdbexample.entity.OutboxMessageEntity;
+import eu.cdevreeze.mdbexample.entity.ProcessedMessageEntity;
 import eu.cdevreeze.mdbexample.model.Message;
 import eu.cdevreeze.mdbexample.model.MessageData;
-import jakarta.ejb.Stateless;
-import jakarta.ejb.TransactionManagement;
-import jakarta.ejb.TransactionManagementType;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import eu.cdevreeze.mdbexample.model.MessageStatisticsSnapshot;
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.annotation.Resource;
+import jakarta.ejb.*;
 import jakarta.inject.Inject;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Message service.
@@ -39,22 +56,290 @@ import java.util.List;
 @TransactionManagement(TransactionManagementType.CONTAINER)
 public class MessageService {
 
+    /**
+     * Hard upper bound on the page size of method "findMessages", bounding the cost of one call.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int EXPORT_FETCH_SIZE = 500;
+
     @Inject
     private MessageDao messageDao;
 
+    @Inject
+    private MessagePayloadDao messagePayloadDao;
+
+    @Inject
+    private OutboxMessageDao outboxMessageDao;
+
+    @Inject
+    private ProcessedMessageDao processedMessageDao;
+
+    @Inject
+    private MessageSearchSupport messageSearchSupport;
+
+    @Inject
+    private MessageCache messageCache;
+
+    @Inject
+    private RecentlyProcessedMessageKeys recentlyProcessedMessageKeys;
+
+    @Inject
+    private MessageStatistics messageStatistics;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     public Message createMessage(MessageData messageData) {
-        return convertToRecord(messageDao.createMessage(convertToEntity(messageData)));
+        return createMessage(messageData, Optional.empty());
+    }
+
+    /**
+     * Creates the message, and, if a deduplication key is given, records that key as processed in the same
+     * transaction. See method "isDuplicate".
+     */
+    public Message createMessage(MessageData messageData, Optional<String> deduplicationKey) {
+        deduplicationKey.ifPresent(this::markAsProcessed);
+
+        Message message = convertToRecord(messageDao.createMessage(convertToEntity(messageData)));
+        messageCache.invalidateMissingAfterCommit(List.of(message));
+        messageStatistics.recordAfterCommit(List.of((long) messageData.messageText().length()));
+        return message;
+    }
+
+    /**
+     * Creates the message, along with outbox entries for forwarding it, in a new transaction. This transaction
+     * only involves the database, so it is a local (one-phase) transaction, even if the caller runs in a
+     * distributed transaction. There is one outbox entry for the copy queue, and one per routed destination
+     * (JNDI name). The outbox entries are later sent by the OutboxRelay. If a deduplication key is given,
+     * it is recorded as processed in the same transaction.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Message createMessageWithOutboxEntries(
+            MessageData messageData,
+            List<String> routedDestinations,
+            Optional<String> deduplicationKey) {
+        deduplicationKey.ifPresent(this::markAsProcessed);
+
+        MessageEntity entity = messageDao.createMessage(convertToEntity(messageData));
+        createOutboxEntries(entity, entity.getMessageText(), routedDestinations);
+
+        Message message = convertToRecord(entity);
+        messageCache.invalidateMissingAfterCommit(List.of(message));
+        messageStatistics.recordAfterCommit(List.of((long) messageData.messageText().length()));
+        return message;
+    }
+
+    /**
+     * Creates a message with a binary payload (e.g. from a BytesMessage) instead of a message text. Exactly
+     * "payloadLength" bytes are streamed from the given input stream into the database, so the payload is never
+     * materialized as a String or byte array. If a deduplication key is given, it is recorded as processed in
+     * the same transaction. The returned message has no message text.
+     */
+    public Message createBinaryMessage(
+            Instant timestamp,
+            InputStream payload,
+            long payloadLength,
+            Optional<String> deduplicationKey) {
+        deduplicationKey.ifPresent(this::markAsProcessed);
+
+        Message message = convertToRecord(createBinaryMessageEntity(timestamp, payload, payloadLength));
+        messageCache.invalidateMissingAfterCommit(List.of(message));
+        messageStatistics.recordAfterCommit(List.of(payloadLength));
+        return message;
+    }
+
+    /**
+     * Like method "createBinaryMessage", but also creating outbox entries, in a new transaction, like method
+     * "createMessageWithOutboxEntries". The outbox entries have no message text, so the OutboxRelay sends the
+     * stored payload instead.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Message createBinaryMessageWithOutboxEntries(
+            Instant timestamp,
+            InputStream payload,
+            long payloadLength,
+            List<String> routedDestinations,
+            Optional<String> deduplicationKey) {
+        deduplicationKey.ifPresent(this::markAsProcessed);
+
+        MessageEntity entity = createBinaryMessageEntity(timestamp, payload, payloadLength);
+        createOutboxEntries(entity, null, routedDestinations);
+
+        Message message = convertToRecord(entity);
+        messageCache.invalidateMissingAfterCommit(List.of(message));
+        messageStatistics.recordAfterCommit(List.of(payloadLength));
+        return message;
+    }
+
+    /**
+     * Creates all given messages in one transaction, using JDBC batch writing instead of one
+     * flush (and round trip) per message.
+     */
+    public List<Message> createMessages(List<MessageData> messageDataList) {
+        List<MessageEntity> entities = messageDataList.stream().map(MessageService::convertToEntity).toList();
+        List<Message> messages = messageDao.createMessages(entities).stream().map(MessageService::convertToRecord).toList();
+        messageCache.invalidateMissingAfterCommit(messages);
+        messageStatistics.recordAfterCommit(
+                messageDataList.stream().map(messageData -> (long) messageData.messageText().length()).toList());
+        return messages;
+    }
+
+    /**
+     * Returns true if the message with the given deduplication key (typically the JMSMessageID) has already been
+     * processed, i.e. stored in a committed transaction. Keys of recently processed messages are checked in memory.
+     * The database is only checked for redelivered messages, so the common case of a first delivery costs no extra
+     * round trip.
+     * <p>
+     * If a duplicate nevertheless gets through (e.g. a business key that is reused by the sender), the unique
+     * index on the processed message key makes the transaction fail. The redelivered message is then detected
+     * as a duplicate.
+     */
+    public boolean isDuplicate(String deduplicationKey, boolean redelivered) {
+        if (recentlyProcessedMessageKeys.contains(deduplicationKey)) {
+            return true;
+        }
+        return redelivered && processedMessageDao.existsProcessedMessage(deduplicationKey);
+    }
+
+    /**
+     * Finds the message with the given ID, if any. Since messages never change once stored, lookups are
+     * served from the (bounded) message cache where possible.
+     */
+    public Optional<Message> findMessage(long id) {
+        return messageCache.get(id, messageDao::findMessage);
+    }
+
+    /**
+     * Returns the length of the binary payload of the message with the given ID, if it has one.
+     */
+    public OptionalLong findPayloadLength(long id) {
+        return messagePayloadDao.findContentLength(id);
+    }
+
+    /**
+     * Writes the binary payload of the message with the given ID to the given output stream, returning false
+     * if the message has no such payload.
+     */
+    public boolean writePayload(long id, OutputStream outputStream) throws IOException {
+        return messagePayloadDao.copyPayload(id, outputStream);
+    }
+
+    /**
+     * Returns the page of messages with IDs greater than "afterId", in ID order, optionally restricted
+     * to a creation time window [fromTime, toTime). The page size is capped at MAX_PAGE_SIZE.
+     */
+    public MessagePage findMessages(long afterId, Optional<Instant> fromTime, Optional<Instant> toTime, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        // Ask for one more message than needed, to find out whether there is a next page
+        List<Message> messages = messageDao.findMessages(
+                afterId,
+                fromTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)),
+                toTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)),
+                pageSize + 1
+        );
+
+        return toPage(messages, pageSize);
+    }
+
+    /**
+     * Returns the page of messages with IDs greater than "afterId", in ID order, whose message text matches the
+     * given full-text search query. The page size is capped at MAX_PAGE_SIZE, and the search query itself is
+     * subject to a timeout. Binary messages are never found.
+     * <p>
+     * Returns an empty Optional if full-text search is not supported, because the message table lacks the
+     * "search_vector" column (see README). That is checked only once (see MessageSearchSupport).
+     */
+    public Optional<MessagePage> searchMessages(String searchQuery, long afterId, int limit) {
+        if (!messageSearchSupport.isSupported()) {
+            return Optional.empty();
+        }
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        // Ask for one more message than needed, to find out whether there is a next page
+        List<Message> messages = messageDao.searchMessages(searchQuery, afterId, pageSize + 1)
+                .stream()
+                .map(MessageService::convertToRecord)
+                .toList();
+        return Optional.of(toPage(messages, pageSize));
+    }
+
+    /**
+     * Returns the statistics of the messages stored by this application instance, maintained in memory,
+     * so without querying the database.
+     */
+    public MessageStatisticsSnapshot getStatistics() {
+        return messageStatistics.getSnapshot();
+    }
+
+    /**
+     * Passes all messages with IDs greater than "afterId", optionally restricted to a creation time window
+     * [fromTime, toTime), to the given consumer, in ID order. The messages are streamed from the database,
+     * so memory usage is independent of the number of messages. Note that the export runs in one transaction,
+     * so very large exports should be split up (using "afterId" or the time window) to stay within
+     * the transaction timeout.
+     */
+    public void exportMessages(
+            long afterId,
+            Optional<Instant> fromTime,
+            Optional<Instant> toTime,
+            Consumer<Message> consumer) {
+        try (Stream<Message> messages = messageDao.streamMessages(
+                afterId,
+                fromTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)),
+                toTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)),
+                EXPORT_FETCH_SIZE)) {
+            messages.forEach(consumer);
+        }
     }
 
-    public Message findMessage(long id) {
-        return convertToRecord(messageDao.findMessage(id));
+    private void markAsProcessed(String deduplicationKey) {
+        processedMessageDao.createProcessedMessage(
+                new ProcessedMessageEntity(deduplicationKey, LocalDateTime.now(ZoneOffset.UTC)));
+        TransactionCallbacks.afterCommit(
+                transactionSynchronizationRegistry, () -> recentlyProcessedMessageKeys.add(deduplicationKey));
     }
 
-    public List<Message> findAllMessages() {
-        return messageDao.findAllMessages().stream().map(MessageService::convertToRecord).toList();
+    private void createOutboxEntries(MessageEntity entity, String messageText, List<String> routedDestinations) {
+        outboxMessageDao.createOutboxMessage(
+                new OutboxMessageEntity(null, entity.getId(), entity.getTimestamp(), messageText));
+        for (String destination : routedDestinations) {
+            outboxMessageDao.createOutboxMessage(
+                    new OutboxMessageEntity(null, entity.getId(), entity.getTimestamp(), messageText, destination));
+        }
     }
 
-    private static MessageEntity convertToEntity(MessageData msg) {
+    private MessageEntity createBinaryMessageEntity(Instant timestamp, InputStream payload, long payloadLength) {
+        // Persisting assigns the ID, which the payload row needs; the message row itself is inserted at flush time
+        MessageEntity entity = messageDao.createMessage(
+                new MessageEntity(null, LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC), null));
+        messagePayloadDao.createPayload(entity.getId(), payload, payloadLength);
+        return entity;
+    }
+
+    private static MessagePage toPage(List<Message> messages, int pageSize) {
+        ImmutableList<Message> page = messages.stream().limit(pageSize).collect(ImmutableList.toImmutableList());
+        OptionalLong nextAfterId = (messages.size() > pageSize) ?
+                OptionalLong.of(page.getLast().id()) :
+                OptionalLong.empty();
+        return new MessagePage(page, nextAfterId);
+    }
+
+    /**
+     * Runs the given in-memory message data through the conversions done when storing and reading a message
+     * (to a JPA entity and back to a record), using the given ID, without touching the database.
+     * Used by the startup warm-up.
+     */
+    public static Message convertInMemory(MessageData messageData, long id) {
+        MessageEntity entity = convertToEntity(messageData);
+        entity.setId(id);
+        return convertToRecord(entity);
+    }
+
+    // The conversions are package-private for the benchmarks (see src/jmh)
+
+    static MessageEntity convertToEntity(MessageData msg) {
         // See https://mkyong.com/java8/java-convert-instant-to-localdatetime/
         return new MessageEntity(
                 null,
@@ -63,7 +348,7 @@ public class MessageService {
         );
     }
 
-    private static Message convertToRecord(MessageEntity msg) {
+    static Message convertToRecord(MessageEntity msg) {
         // See https://mkyong.com/java8/java-convert-instant-to-localdatetime/
         return new Message(msg.getId(), msg.getTimestamp().toInstant(ZoneOffset.UTC), msg.getMessageText());
     }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.mdbexample.model.MessageStatisticsSnapshot;
+import eu.cdevreeze.mdbexample.model.MessageStatisticsSnapshot.PeriodCount;
+import eu.cdevreeze.mdbexample.model.MessageStatisticsSnapshot.SizeClassCount;
+import eu.cdevreeze.mdbexample.util.TransactionCallbacks;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Incrementally maintained, in-memory statistics of the messages stored by this application instance since
+ * startup: message counts and total sizes per minute (last hour) and per hour (last day), and a size distribution
+ * in power-of-2 size classes. Messages are only counted once their transaction has committed.
+ * <p>
+ * Recording is lock-free (striped LongAdder counters in ring buffers of time buckets), and taking a snapshot
+ * costs the same no matter how many messages have been stored. A time bucket is reused for a later period by
+ * the first recording in that period, so counts recorded concurrently with that reset may get lost; an acceptable
+ * inaccuracy for dashboards. With multiple application instances, the statistics must be added up by the caller.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class MessageStatistics {
+
+    private static final int MINUTES_KEPT = 60;
+    private static final int HOURS_KEPT = 24;
+
+    // Size class i holds sizes in (2^(i-1), 2^i], and size class 0 holds sizes 0 and 1
+    private static final int SIZE_CLASS_COUNT = Long.SIZE;
+
+    private static final class TimeBucket {
+
+        private final AtomicLong period = new AtomicLong(-1L);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalSize = new LongAdder();
+    }
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private final Instant startTime = Instant.now();
+
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalSize = new LongAdder();
+    private final AtomicLong maxSize = new AtomicLong();
+
+    private final TimeBucket[] minuteBuckets = createTimeBuckets(MINUTES_KEPT);
+    private final TimeBucket[] hourBuckets = createTimeBuckets(HOURS_KEPT);
+
+    private final LongAdder[] sizeClassCounts = createCounters(SIZE_CLASS_COUNT);
+
+    /**
+     * Records the stored messages with the given sizes once the current transaction has committed.
+     */
+    public void recordAfterCommit(Collection<Long> messageSizes) {
+        TransactionCallbacks.afterCommit(transactionSynchronizationRegistry, () -> {
+            long nowMillis = System.currentTimeMillis();
+            messageSizes.forEach(size -> record(nowMillis, size));
+        });
+    }
+
+    public MessageStatisticsSnapshot getSnapshot() {
+        long nowMillis = System.currentTimeMillis();
+
+        ImmutableList.Builder<SizeClassCount> sizeDistribution = ImmutableList.builder();
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            long count = sizeClassCounts[i].sum();
+            if (count > 0) {
+                sizeDistribution.add(new SizeClassCount((i == SIZE_CLASS_COUNT - 1) ? Long.MAX_VALUE : 1L << i, count));
+            }
+        }
+
+        return new MessageStatisticsSnapshot(
+                startTime,
+                totalCount.sum(),
+                totalSize.sum(),
+                maxSize.get(),
+                getPeriodCounts(minuteBuckets, nowMillis / 60_000L, ChronoUnit.MINUTES),
+                getPeriodCounts(hourBuckets, nowMillis / 3_600_000L, ChronoUnit.HOURS),
+                sizeDistribution.build()
+        );
+    }
+
+    private void record(long nowMillis, long size) {
+        totalCount.increment();
+        totalSize.add(size);
+        maxSize.accumulateAndGet(size, Math::max);
+        sizeClassCounts[sizeClass(size)].increment();
+
+        addToTimeBucket(minuteBuckets, nowMillis / 60_000L, size);
+        addToTimeBucket(hourBuckets, nowMillis / 3_600_000L, size);
+    }
+
+    private static void addToTimeBucket(TimeBucket[] buckets, long period, long size) {
+        TimeBucket bucket = buckets[(int) (period % buckets.length)];
+        long bucketPeriod = bucket.period.get();
+
+        if (bucketPeriod != period) {
+            if (bucketPeriod > period) {
+                // The bucket has moved on already, so this (late) recording no longer fits in the ring
+                return;
+            }
+            if (bucket.period.compareAndSet(bucketPeriod, period)) {
+                bucket.count.reset();
+                bucket.totalSize.reset();
+            }
+        }
+        bucket.count.increment();
+        bucket.totalSize.add(size);
+    }
+
+    private static ImmutableList<PeriodCount> getPeriodCounts(TimeBucket[] buckets, long currentPeriod, ChronoUnit unit) {
+        long periodMillis = unit.getDuration().toMillis();
+        ImmutableList.Builder<PeriodCount> periodCounts = ImmutableList.builder();
+
+        // Oldest period first, including periods without any messages
+        for (long period = currentPeriod - buckets.length + 1; period <= currentPeriod; period++) {
+            TimeBucket bucket = buckets[(int) (period % buckets.length)];
+            boolean current = bucket.period.get() == period;
+            periodCounts.add(new PeriodCount(
+                    Instant.ofEpochMilli(period * periodMillis),
+                    current ? bucket.count.sum() : 0L,
+                    current ? bucket.totalSize.sum() : 0L));
+        }
+        return periodCounts.build();
+    }
+
+    private static int sizeClass(long size) {
+        return (size <= 1L) ? 0 : Math.min(Long.SIZE - Long.numberOfLeadingZeros(size - 1), SIZE_CLASS_COUNT - 1);
+    }
+
+    private static TimeBucket[] createTimeBuckets(int count) {
+        TimeBucket[] buckets = new TimeBucket[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new TimeBucket();
+        }
+        return buckets;
+    }
+
+    private static LongAdder[] createCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.service;
+
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.logging.Logger;
+
+/**
+ * Relay forwarding outbox messages to the copy queue, if the forwarding mode is OUTBOX. It is triggered
+ * every second by a (non-persistent) timer, and then sends batches until the outbox is empty
+ * (or a maximum number of batches has been sent). Each batch runs in its own transaction.
+ * <p>
+ * Being a singleton with container-managed (write) locking, at most one relay run is active at any time
+ * in this application instance. Across instances, row locks on the outbox prevent double sends.
+ *
+ * @author Chris de Vreeze
+ */
+@Singleton
+@Startup
+public class OutboxRelay {
+
+    private static final Logger logger = Logger.getLogger(OutboxRelay.class.getName());
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.forwarding.mode", defaultValue = "XA")
+    private ForwardingMode forwardingMode;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.outbox.batch-size", defaultValue = "500")
+    private int batchSize;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.outbox.max-batches-per-run", defaultValue = "100")
+    private int maxBatchesPerRun;
+
+    @Inject
+    private OutboxRelayService outboxRelayService;
+
+    @Schedule(second = "*", minute = "*", hour = "*", persistent = false)
+    // No transaction here; each call to OutboxRelayService.relayBatch runs in its own transaction
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void relay() {
+        if (forwardingMode != ForwardingMode.OUTBOX) {
+            return;
+        }
+
+        int totalSent = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            int sent = outboxRelayService.relayBatch(batchSize);
+            totalSent += sent;
+
+            if (sent < batchSize) {
+                break;
+            }
+        }
+
+        if (totalSent > 0) {
+            logger.info("Relayed " + totalSent + " outbox message(s)");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.service;
+
+import eu.cdevreeze.mdbexample.dao.MessagePayloadDao;
+import eu.cdevreeze.mdbexample.dao.OutboxMessageDao;
+import eu.cdevreeze.mdbexample.entity.OutboxMessageEntity;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.inject.Inject;
+import jakarta.jms.JMSConnectionFactory;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.Queue;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service sending outbox messages to the copy queue, or to the destination of the outbox message (as selected
+ * by the MessageRouter), if any. One call sends one batch of outbox messages in one
+ * (distributed) transaction, so the cost of the 2-phase commit is shared by all messages in the batch.
+ *
+ * @author Chris de Vreeze
+ */
+@Stateless
+// TransactionManagement annotation value and even annotation itself can be left implicit, since this is the default
+@TransactionManagement(TransactionManagementType.CONTAINER)
+public class OutboxRelayService {
+
+    @Inject
+    @JMSConnectionFactory("jms/connectionFactory")
+    private JMSContext jmsContext;
+
+    @Resource(lookup = "jms/MdbExampleCopiedQueue")
+    private Queue copyQueue;
+
+    @Inject
+    private OutboxMessageDao outboxMessageDao;
+
+    @Inject
+    private MessagePayloadDao messagePayloadDao;
+
+    /**
+     * Sends the oldest (at most "batchSize") outbox messages to their destination (by default the copy queue),
+     * and removes them from the outbox, in one transaction. Returns the number of messages sent. Outbox messages
+     * without message text are binary messages, whose stored payload is sent as BytesMessage.
+     */
+    public int relayBatch(int batchSize) {
+        List<OutboxMessageEntity> outboxMessages = outboxMessageDao.findOldestOutboxMessagesForUpdate(batchSize);
+        if (outboxMessages.isEmpty()) {
+            return 0;
+        }
+
+        JMSProducer producer = jmsContext.createProducer();
+        Map<String, Queue> routedDestinations = new HashMap<>();
+        for (OutboxMessageEntity outboxMessage : outboxMessages) {
+            Queue destination = (outboxMessage.getDestination() == null) ?
+                    copyQueue :
+                    routedDestinations.computeIfAbsent(outboxMessage.getDestination(), this::lookupDestination);
+
+            if (outboxMessage.getMessageText() != null) {
+                producer.send(destination, outboxMessage.getMessageText());
+            } else {
+                // Binary message, sent as BytesMessage, with the payload streamed into it
+                producer.send(
+                        destination,
+                        BytesMessageOutputStream.createPayloadMessage(
+                                jmsContext, messagePayloadDao, outboxMessage.getMessageId()));
+            }
+        }
+
+        outboxMessageDao.deleteOutboxMessages(outboxMessages.stream().map(OutboxMessageEntity::getId).toList());
+        return outboxMessages.size();
+    }
+
+    private Queue lookupDestination(String destinationName) {
+        try {
+            return InitialContext.doLookup(destinationName);
+        } catch (NamingException e) {
+            throw new IllegalStateException("Unknown destination in outbox: " + destinationName, e);
+        }
+    }
+}
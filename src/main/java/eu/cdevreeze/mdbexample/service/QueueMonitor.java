@@ -0,0 +1,259 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.collect.ImmutableMap;
+import eu.cdevreeze.mdbexample.model.QueueStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import jakarta.jms.*;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Monitor of the depth and oldest message age of the configured queues (MicroProfile Config property
+ * "mdbexample.queue-monitor.queues"). The queues are checked every 15 seconds by a (non-persistent) timer,
+ * and the results are kept in memory. So reading the queue statuses (by the "/queues" endpoint and the health
+ * checks) costs nothing, and never touches the messaging provider. Monitoring can be switched off with
+ * "mdbexample.queue-monitor.enabled", e.g. during load tests.
+ * <p>
+ * If the administrative REST API of IBM MQ is configured ("mdbexample.queue-monitor.admin-url", pointing to the
+ * queues of the queue manager, e.g. "https://mqhost:9443/ibmmq/rest/v2/admin/qmgr/QM1/queue"), the depth is
+ * the current depth as kept by the queue manager, and only the first message is browsed, for the oldest message
+ * age. Otherwise the queues are browsed (using a QueueBrowser, so without consuming anything). Browsing a queue
+ * enumerates its messages, so browsing stops after "max-browse" messages per queue, and the depth is only exact
+ * for short queues. The oldest message is the first one browsed, assuming FIFO queues.
+ * <p>
+ * A status of which the check failed, or which is older than "max-status-age" (e.g. because the checks are
+ * stuck), is unknown. See method "isKnown".
+ *
+ * @author Chris de Vreeze
+ */
+@Singleton
+@Startup
+public class QueueMonitor {
+
+    private static final Logger logger = Logger.getLogger(QueueMonitor.class.getName());
+
+    private static final Duration ADMIN_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.queues")
+    private List<String> queueNames;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.max-browse", defaultValue = "100")
+    private int maxBrowse;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.max-status-age", defaultValue = "PT1M")
+    private Duration maxStatusAge;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.admin-url")
+    private Optional<String> adminUrl;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.admin-user")
+    private Optional<String> adminUser;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.queue-monitor.admin-password")
+    private Optional<String> adminPassword;
+
+    @Resource(lookup = "jms/connectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    private HttpClient httpClient;
+
+    private volatile ImmutableMap<String, QueueStatus> queueStatuses = ImmutableMap.of();
+
+    private volatile Optional<Instant> lastRefreshTime = Optional.empty();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            logger.info("Queue monitoring disabled");
+            return;
+        }
+        httpClient = HttpClient.newBuilder().connectTimeout(ADMIN_REQUEST_TIMEOUT).build();
+        logger.info("Monitoring queues " + queueNames +
+                adminUrl.map(url -> ", with depths from " + url).orElse(", browsing at most " + maxBrowse + " messages"));
+    }
+
+    /**
+     * Returns true if queue monitoring is enabled.
+     */
+    @Lock(LockType.READ)
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the queue statuses found by the most recent check, keyed by queue (JNDI) name.
+     */
+    @Lock(LockType.READ)
+    public ImmutableMap<String, QueueStatus> getQueueStatuses() {
+        return queueStatuses;
+    }
+
+    /**
+     * Returns the time of the most recent check, if any.
+     */
+    @Lock(LockType.READ)
+    public Optional<Instant> getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
+    /**
+     * Returns true if the given queue status is known at the given time, i.e. if its check succeeded and it is
+     * no older than "max-status-age". Unknown statuses must not be taken to mean that the queue is empty.
+     */
+    @Lock(LockType.READ)
+    public boolean isKnown(QueueStatus queueStatus, Instant now) {
+        return queueStatus.errorMessage().isEmpty() &&
+                Duration.between(queueStatus.checkTime(), now).compareTo(maxStatusAge) <= 0;
+    }
+
+    @Schedule(second = "*/15", minute = "*", hour = "*", persistent = false)
+    // Browsing is not transactional
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    // No write lock, which would block the readers while browsing; the statuses are replaced all at once
+    @Lock(LockType.READ)
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        ImmutableMap.Builder<String, QueueStatus> statuses = ImmutableMap.builder();
+        for (String queueName : queueNames) {
+            statuses.put(queueName, checkQueue(queueName));
+        }
+        queueStatuses = statuses.build();
+        lastRefreshTime = Optional.of(Instant.now());
+    }
+
+    private QueueStatus checkQueue(String queueName) {
+        Instant checkTime = Instant.now();
+        try (JMSContext context = connectionFactory.createContext()) {
+            Queue queue = InitialContext.doLookup(queueName);
+            if (adminUrl.isPresent()) {
+                long depth = findCurrentDepth(adminUrl.get(), queue.getQueueName());
+                // Only the oldest message is browsed
+                Optional<Instant> oldestMessageTimestamp =
+                        (depth == 0) ? Optional.empty() : browseQueue(context, queue, 1).oldestMessageTimestamp();
+                return new QueueStatus(
+                        queueName, Optional.of(depth), false, oldestMessageTimestamp, checkTime, Optional.empty());
+            } else {
+                BrowseResult browseResult = browseQueue(context, queue, maxBrowse);
+                return new QueueStatus(
+                        queueName,
+                        Optional.of(browseResult.count()),
+                        browseResult.capped(),
+                        browseResult.oldestMessageTimestamp(),
+                        checkTime,
+                        Optional.empty());
+            }
+        } catch (JMSException | NamingException | IOException | RuntimeException e) {
+            // Including JMSRuntimeException, and unexpected JSON responses of the admin API
+            logger.warning("Could not check queue " + queueName + ": " + e);
+            return new QueueStatus(
+                    queueName, Optional.empty(), false, Optional.empty(), checkTime, Optional.of(e.toString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new QueueStatus(
+                    queueName, Optional.empty(), false, Optional.empty(), checkTime, Optional.of(e.toString()));
+        }
+    }
+
+    private record BrowseResult(long count, boolean capped, Optional<Instant> oldestMessageTimestamp) {
+    }
+
+    private static BrowseResult browseQueue(JMSContext context, Queue queue, int maxMessages) throws JMSException {
+        try (QueueBrowser browser = context.createBrowser(queue)) {
+            Enumeration<?> messages = browser.getEnumeration();
+
+            long count = 0;
+            Optional<Instant> oldestMessageTimestamp = Optional.empty();
+            while (count < maxMessages && messages.hasMoreElements()) {
+                Message message = (Message) messages.nextElement();
+                if (count == 0 && message.getJMSTimestamp() > 0) {
+                    oldestMessageTimestamp = Optional.of(Instant.ofEpochMilli(message.getJMSTimestamp()));
+                }
+                count += 1;
+            }
+            return new BrowseResult(count, messages.hasMoreElements(), oldestMessageTimestamp);
+        }
+    }
+
+    /**
+     * Returns the current depth of the given queue (IBM MQ queue name), as kept by the queue manager, using the
+     * administrative REST API of IBM MQ (which issues the corresponding PCF inquiry).
+     */
+    private long findCurrentDepth(String queuesUrl, String mqQueueName) throws IOException, InterruptedException {
+        // IBM MQ queues may be given in URI form, e.g. "queue:///DEV.QUEUE.1?persistence=2"
+        String baseQueueName = mqQueueName.replaceFirst("^queue://[^/]*/", "").replaceFirst("\\?.*$", "");
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(queuesUrl + "/" + URLEncoder.encode(baseQueueName, StandardCharsets.UTF_8) + "?status=*"))
+                .timeout(ADMIN_REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .GET();
+        adminUser.ifPresent(user -> request.header(
+                "Authorization",
+                "Basic " + Base64.getEncoder().encodeToString(
+                        (user + ":" + adminPassword.orElse("")).getBytes(StandardCharsets.UTF_8))));
+
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body(); JsonReader jsonReader = Json.createReader(body)) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Unexpected status " + response.statusCode() + " for queue " + baseQueueName);
+            }
+            JsonArray queues = jsonReader.readObject().getJsonArray("queue");
+            if (queues == null || queues.isEmpty()) {
+                throw new IOException("Queue " + baseQueueName + " not found");
+            }
+            JsonObject status = queues.getJsonObject(0).getJsonObject("status");
+            return status.getJsonNumber("currentDepth").longValueExact();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Bounded in-memory set of the deduplication keys of recently processed (and committed) messages.
+ * It catches most redeliveries without a database round trip. Being bounded, it can only tell that a key
+ * has certainly been processed, not that it has not.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class RecentlyProcessedMessageKeys {
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.deduplication.recent-keys-size", defaultValue = "100000")
+    private long maximumSize;
+
+    private Cache<String, Boolean> keys;
+
+    @PostConstruct
+    void init() {
+        keys = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    public boolean contains(String messageKey) {
+        return keys.getIfPresent(messageKey) != null;
+    }
+
+    public void add(String messageKey) {
+        keys.put(messageKey, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.base.Ascii;
+import com.google.common.util.concurrent.RateLimiter;
+import eu.cdevreeze.mdbexample.model.ReplayJob;
+import eu.cdevreeze.mdbexample.model.ReplayJobStatus;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runner of replay jobs. Method "runReplayJob" runs asynchronously, in a container-managed thread, replaying
+ * one batch after another (each in its own transaction, see ReplayService), until the job has completed,
+ * has been cancelled, or fails. The job's rate limit is enforced outside the batch transactions, so waiting
+ * for the rate limiter holds no locks and does not count towards the transaction timeout.
+ * <p>
+ * Mind that the number of concurrently running jobs is also bounded by the container's thread pool
+ * for asynchronous EJB methods.
+ *
+ * @author Chris de Vreeze
+ */
+@Stateless
+public class ReplayRunner {
+
+    private static final Logger logger = Logger.getLogger(ReplayRunner.class.getName());
+
+    @Inject
+    private ReplayService replayService;
+
+    @Asynchronous
+    // No transaction here; each call to ReplayService.replayBatch runs in its own transaction
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void runReplayJob(long id) {
+        ReplayJob replayJob = replayService.findReplayJob(id)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown replay job " + id));
+        RateLimiter rateLimiter = RateLimiter.create(replayJob.ratePerSecond());
+
+        logger.info("Starting replay job " + id + " after checkpoint " + replayJob.checkpointId());
+
+        try {
+            int replayed = 0;
+            while (replayed >= 0) {
+                // Permits are taken for the previous batch; a new job's first batch does not wait
+                if (replayed > 0) {
+                    rateLimiter.acquire(replayed);
+                }
+                replayed = replayService.replayBatch(id);
+            }
+            logger.info("Replay job " + id + " stopped: " + replayService.findReplayJob(id).map(ReplayJob::status));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Replay job " + id + " failed", e);
+            // Truncated to fit the error message column
+            String errorMessage = Ascii.truncate(String.valueOf(e), 255, "...");
+            replayService.updateStatus(id, ReplayJobStatus.FAILED, Optional.of(errorMessage));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.service;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.mdbexample.dao.MessageDao;
+import eu.cdevreeze.mdbexample.dao.MessagePayloadDao;
+import eu.cdevreeze.mdbexample.dao.ReplayJobDao;
+import eu.cdevreeze.mdbexample.entity.ReplayJobEntity;
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.ReplayJob;
+import eu.cdevreeze.mdbexample.model.ReplayJobStatus;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import jakarta.jms.JMSConnectionFactory;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSProducer;
+import jakarta.jms.Queue;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service managing replay jobs, which send stored messages (back) to a queue, e.g. after an incident.
+ * The replaying itself is driven by the ReplayRunner, calling method "replayBatch" in a loop.
+ * <p>
+ * Each batch of messages is sent in one (distributed) transaction, in which the job's checkpoint (the ID of
+ * the last replayed message) is updated as well. So after a failure or cancellation, the job can be resumed
+ * from its checkpoint without skipping or resending messages. The messages are read in keyset pages of one batch
+ * each, so memory usage does not depend on the number of messages replayed.
+ * <p>
+ * Replayed messages get string property "MdbExampleReplayedMessageId", holding the ID of the stored message.
+ *
+ * @author Chris de Vreeze
+ */
+@Stateless
+// TransactionManagement annotation value and even annotation itself can be left implicit, since this is the default
+@TransactionManagement(TransactionManagementType.CONTAINER)
+public class ReplayService {
+
+    public static final String REPLAYED_MESSAGE_ID_PROPERTY = "MdbExampleReplayedMessageId";
+
+    @Inject
+    @JMSConnectionFactory("jms/connectionFactory")
+    private JMSContext jmsContext;
+
+    @Inject
+    private ReplayJobDao replayJobDao;
+
+    @Inject
+    private MessageDao messageDao;
+
+    @Inject
+    private MessagePayloadDao messagePayloadDao;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.replay.allowed-destinations",
+            defaultValue = "jms/MdbExampleQueue,jms/MdbExampleCopiedQueue")
+    private List<String> allowedDestinations;
+
+    /**
+     * Creates replay jobs for the stored messages with IDs in (startAfterId, toId], optionally restricted to the
+     * creation time window [fromTime, toTime). If no "toId" is given, it is the current maximum message ID.
+     * The ID range is split evenly over (at most) "concurrency" jobs, which share the total rate (in messages
+     * per second).
+     * The jobs are not started yet (see ReplayRunner).
+     */
+    public List<ReplayJob> createReplayJobs(
+            String destination,
+            long startAfterId,
+            Optional<Long> toId,
+            Optional<Instant> fromTime,
+            Optional<Instant> toTime,
+            int batchSize,
+            double ratePerSecond,
+            int concurrency) {
+        if (!isAllowedDestination(destination)) {
+            throw new IllegalArgumentException("Destination not allowed for replay: " + destination);
+        }
+
+        long lastId = Math.max(toId.or(() -> messageDao.findMaxMessageId()).orElse(startAfterId), startAfterId);
+        long rangeSize = lastId - startAfterId;
+        int segmentCount = (int) Math.max(Math.min(concurrency, rangeSize), 1L);
+        long segmentSize = (rangeSize + segmentCount - 1) / segmentCount;
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+        ImmutableList.Builder<ReplayJob> replayJobs = ImmutableList.builder();
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentStart = startAfterId + i * segmentSize;
+
+            ReplayJobEntity replayJob = new ReplayJobEntity();
+            replayJob.setDestination(destination);
+            replayJob.setStartAfterId(segmentStart);
+            replayJob.setToId((i == segmentCount - 1) ? lastId : segmentStart + segmentSize);
+            replayJob.setFromTime(fromTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)).orElse(null));
+            replayJob.setToTime(toTime.map(t -> LocalDateTime.ofInstant(t, ZoneOffset.UTC)).orElse(null));
+            replayJob.setCheckpointId(segmentStart);
+            replayJob.setBatchSize(batchSize);
+            replayJob.setRatePerSecond(ratePerSecond / segmentCount);
+            replayJob.setStatus(ReplayJobStatus.RUNNING);
+            replayJob.setCreationTime(now);
+            replayJob.setUpdateTime(now);
+            replayJobs.add(convertToRecord(replayJobDao.createReplayJob(replayJob)));
+        }
+        return replayJobs.build();
+    }
+
+    /**
+     * Returns true if the given destination (JNDI name) is one of the allowed replay destinations, configured
+     * through MicroProfile Config property "mdbexample.replay.allowed-destinations".
+     */
+    public boolean isAllowedDestination(String destination) {
+        return allowedDestinations.contains(destination);
+    }
+
+    public Optional<ReplayJob> findReplayJob(long id) {
+        return replayJobDao.findReplayJob(id).map(ReplayService::convertToRecord);
+    }
+
+    /**
+     * Sets the status of the replay job, if it exists and has not completed, returning the updated job. Setting
+     * status RUNNING prepares a stopped job for resumption, and clears any error message.
+     * <p>
+     * Like method "replayBatch", this method locks the replay job, so it waits for a concurrently replayed batch
+     * to commit, and then checks the status against the committed state. That way a job that has just completed is
+     * not set to CANCELLED or FAILED, and the checkpoint written by that batch is not lost.
+     */
+    public Optional<ReplayJob> updateStatus(long id, ReplayJobStatus status, Optional<String> errorMessage) {
+        return replayJobDao.findReplayJobForUpdate(id).map(replayJob -> {
+            if (replayJob.getStatus() != ReplayJobStatus.COMPLETED) {
+                replayJob.setStatus(status);
+                replayJob.setErrorMessage(errorMessage.orElse(null));
+                replayJob.setUpdateTime(LocalDateTime.now(ZoneOffset.UTC));
+            }
+            return convertToRecord(replayJob);
+        });
+    }
+
+    /**
+     * Sets the status of the replay job to RUNNING, unless it has completed. The replay job is locked while doing
+     * so, so of concurrent calls for the same job, only one sees it as not running yet. Returns the replay job,
+     * and whether it was running before, in which case no new ReplayRunner run must be started for it.
+     */
+    public Optional<ResumedReplayJob> resumeReplayJob(long id) {
+        return replayJobDao.findReplayJobForUpdate(id).map(replayJob -> {
+            boolean wasRunning = replayJob.getStatus() == ReplayJobStatus.RUNNING;
+            if (replayJob.getStatus() != ReplayJobStatus.COMPLETED && !wasRunning) {
+                replayJob.setStatus(ReplayJobStatus.RUNNING);
+                replayJob.setErrorMessage(null);
+                replayJob.setUpdateTime(LocalDateTime.now(ZoneOffset.UTC));
+            }
+            return new ResumedReplayJob(convertToRecord(replayJob), wasRunning);
+        });
+    }
+
+    /**
+     * Result of method "resumeReplayJob".
+     */
+    public record ResumedReplayJob(ReplayJob replayJob, boolean wasRunning) {
+    }
+
+    /**
+     * Replays the next batch of messages of the given replay job, if it is running, in one transaction.
+     * Returns the number of replayed messages, or -1 if the job is no longer running (e.g. because it has
+     * just completed).
+     */
+    public int replayBatch(long id) {
+        ReplayJobEntity replayJob = replayJobDao.findReplayJobForUpdate(id)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown replay job " + id));
+        if (replayJob.getStatus() != ReplayJobStatus.RUNNING) {
+            return -1;
+        }
+
+        List<Message> messages = messageDao.findMessages(
+                replayJob.getCheckpointId(),
+                replayJob.getToId(),
+                Optional.ofNullable(replayJob.getFromTime()),
+                Optional.ofNullable(replayJob.getToTime()),
+                replayJob.getBatchSize());
+
+        Queue destination = lookupQueue(replayJob.getDestination());
+        JMSProducer producer = jmsContext.createProducer();
+        for (Message message : messages) {
+            producer.setProperty(REPLAYED_MESSAGE_ID_PROPERTY, String.valueOf(message.id()));
+            if (message.messageText() != null) {
+                producer.send(destination, message.messageText());
+            } else {
+                // Binary message, sent as BytesMessage, with the payload streamed into it
+                producer.send(
+                        destination,
+                        BytesMessageOutputStream.createPayloadMessage(jmsContext, messagePayloadDao, message.id()));
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            replayJob.setCheckpointId(messages.getLast().id());
+            replayJob.setReplayedCount(replayJob.getReplayedCount() + messages.size());
+        }
+        if (messages.size() < replayJob.getBatchSize() || replayJob.getCheckpointId() >= replayJob.getToId()) {
+            replayJob.setStatus(ReplayJobStatus.COMPLETED);
+        }
+        replayJob.setUpdateTime(LocalDateTime.now(ZoneOffset.UTC));
+        return messages.size();
+    }
+
+    private static Queue lookupQueue(String jndiName) {
+        try {
+            return InitialContext.doLookup(jndiName);
+        } catch (NamingException e) {
+            throw new IllegalStateException("Unknown destination " + jndiName, e);
+        }
+    }
+
+    private static ReplayJob convertToRecord(ReplayJobEntity replayJob) {
+        return new ReplayJob(
+                replayJob.getId(),
+                replayJob.getDestination(),
+                replayJob.getStartAfterId(),
+                replayJob.getToId(),
+                Optional.ofNullable(replayJob.getFromTime()).map(t -> t.toInstant(ZoneOffset.UTC)),
+                Optional.ofNullable(replayJob.getToTime()).map(t -> t.toInstant(ZoneOffset.UTC)),
+                replayJob.getCheckpointId(),
+                replayJob.getReplayedCount(),
+                replayJob.getBatchSize(),
+                replayJob.getRatePerSecond(),
+                replayJob.getStatus(),
+                Optional.ofNullable(replayJob.getErrorMessage()),
+                replayJob.getCreationTime().toInstant(ZoneOffset.UTC),
+                replayJob.getUpdateTime().toInstant(ZoneOffset.UTC)
+        );
+    }
+}
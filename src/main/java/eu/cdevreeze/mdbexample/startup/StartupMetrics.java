@@ -0,0 +1,70 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.startup;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Startup metrics: the time from JVM start until the first message is received by one of the message listeners
+ * (gauge "startup.timeToFirstMessage"), and the duration of the startup warm-up (gauge "startup.warmUpDuration").
+ * The gauges are registered once their values are known.
+ *
+ * @author Chris de Vreeze
+ */
+@ApplicationScoped
+public class StartupMetrics {
+
+    private final AtomicBoolean firstMessageReceived = new AtomicBoolean();
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    /**
+     * Records the time to the first message, if this is the first call.
+     */
+    public void recordMessageReceived() {
+        if (firstMessageReceived.get() || !firstMessageReceived.compareAndSet(false, true)) {
+            return;
+        }
+        long timeToFirstMessageMillis =
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        registerGauge("startup.timeToFirstMessage", "Time from JVM start to the first received message",
+                timeToFirstMessageMillis);
+    }
+
+    public void recordWarmUp(Duration duration) {
+        registerGauge("startup.warmUpDuration", "Duration of the startup warm-up", duration.toMillis());
+    }
+
+    private void registerGauge(String name, String description, long valueMillis) {
+        Metadata metadata = Metadata.builder()
+                .withName(name)
+                .withDescription(description)
+                .withUnit(MetricUnits.MILLISECONDS)
+                .build();
+        metricRegistry.gauge(metadata, valueMillis, Function.identity());
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.startup;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.mdbexample.dao.SchemaDao;
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.MessageData;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import eu.cdevreeze.mdbexample.service.MessageService;
+import eu.cdevreeze.mdbexample.ws.MessageRecordFormat;
+import eu.cdevreeze.mdbexample.ws.MessageResource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.*;
+import jakarta.inject.Inject;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.JMSContext;
+import jakarta.jms.JMSException;
+import jakarta.jms.TextMessage;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional startup warm-up (MicroProfile Config property "mdbexample.warm-up.enabled"), taking the first-request
+ * costs before the application reports itself ready (see WarmUpReadinessCheck). Right after startup, in the
+ * background, it:
+ * <ul>
+ *     <li>checks that the database schema matches the JPA entities (which makes sense when the schema is no
+ *     longer generated at startup, see server variable "mdbexample.jpa.schema-generation-action")</li>
+ *     <li>fills the database and JMS connection pools with "connections" connections each</li>
+ *     <li>runs "iterations" passes through the message listener and REST code paths, so that these paths are loaded,
+ *     initialized and JIT-compiled: text extraction from a TextMessage, conversion to a JPA entity and back,
+ *     and JSON and binary serialization of message pages. The messages are in-memory fixtures, so these paths
+ *     are warmed up even if the message table is empty. The passes also run the (read-only) message query
+ *     and statistics of MessageResource.</li>
+ * </ul>
+ * If the warm-up fails (e.g. because the database is not reachable yet), it is retried, with exponential back-off
+ * from "retry-delay" up to "max-retry-delay", in another single-action timer. So a transient failure does not
+ * keep the application unready forever.
+ * Mind that readiness only gates HTTP traffic; the message-driven beans start consuming as soon as their
+ * activation specs are started.
+ *
+ * @author Chris de Vreeze
+ */
+@Singleton
+@Startup
+// No container-managed locks, which would block the readiness check while warming up
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class StartupWarmUp {
+
+    private static final Logger logger = Logger.getLogger(StartupWarmUp.class.getName());
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.warm-up.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.warm-up.connections", defaultValue = "10")
+    private int connectionCount;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.warm-up.iterations", defaultValue = "200")
+    private int iterations;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.warm-up.retry-delay", defaultValue = "PT5S")
+    private Duration retryDelay;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.warm-up.max-retry-delay", defaultValue = "PT5M")
+    private Duration maxRetryDelay;
+
+    private static final int FIXTURE_PAGE_SIZE = 100;
+
+    @Resource
+    private TimerService timerService;
+
+    @Resource(lookup = "jdbc/messageJpaDataSource")
+    private DataSource dataSource;
+
+    @Resource(lookup = "jms/connectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Inject
+    private SchemaDao schemaDao;
+
+    @Inject
+    private MessageResource messageResource;
+
+    @Inject
+    private MessageRecordFormat messageRecordFormat;
+
+    @Inject
+    private StartupMetrics startupMetrics;
+
+    private volatile boolean completed;
+
+    private volatile Optional<String> failure = Optional.empty();
+
+    private volatile int attempts;
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            // Warming up happens in a timer callback, so it does not delay the deployment of the application
+            timerService.createSingleActionTimer(0L, new TimerConfig("warm-up", false));
+        } else {
+            completed = true;
+        }
+    }
+
+    /**
+     * Returns true if the warm-up has completed successfully, or is disabled.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the error message if the last warm-up attempt failed (e.g. because the schema check failed).
+     */
+    public Optional<String> getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the number of warm-up attempts so far.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    @Timeout
+    // No transaction here, so the connections are really returned to the pools, and queries do not pile up
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void warmUp(Timer timer) {
+        long startNanos = System.nanoTime();
+        attempts += 1;
+        logger.info("Starting warm-up (attempt " + attempts + ")");
+
+        try {
+            schemaDao.checkEntityTables();
+            fillDataSourcePool();
+            fillJmsConnectionPool();
+            runSyntheticPasses();
+
+            Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+            startupMetrics.recordWarmUp(duration);
+            failure = Optional.empty();
+            completed = true;
+            logger.info("Completed warm-up in " + duration.toMillis() + " ms");
+        } catch (RuntimeException | SQLException | IOException | JMSException e) {
+            failure = Optional.of(e.toString());
+            Duration delay = getRetryDelay(attempts);
+            logger.log(Level.SEVERE, "Warm-up failed; retrying in " + delay.toMillis() + " ms", e);
+            timerService.createSingleActionTimer(delay.toMillis(), new TimerConfig("warm-up", false));
+        }
+    }
+
+    private Duration getRetryDelay(int attempt) {
+        // Doubling per attempt, with the shift bounded to prevent overflow
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return (delay.compareTo(maxRetryDelay) > 0) ? maxRetryDelay : delay;
+    }
+
+    private void fillDataSourcePool() throws SQLException {
+        // Holding all connections at the same time forces the pool to create them
+        List<Connection> connections = new ArrayList<>(connectionCount);
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private void fillJmsConnectionPool() {
+        List<JMSContext> contexts = new ArrayList<>(connectionCount);
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                JMSContext context = connectionFactory.createContext();
+                contexts.add(context);
+                // Makes sure the connection is really established
+                context.createProducer();
+            }
+        } finally {
+            contexts.forEach(JMSContext::close);
+        }
+    }
+
+    private void runSyntheticPasses() throws IOException, JMSException {
+        try (JMSContext context = connectionFactory.createContext()) {
+            for (int i = 0; i < iterations; i++) {
+                // Listener and REST conversion and serialization paths, on in-memory fixtures (nothing is sent)
+                MessagePage fixturePage = createFixturePage(context, i);
+                writePage(fixturePage);
+
+                // Read-only passes through the REST query paths, on whatever is stored
+                messageResource.findMessages(0L, FIXTURE_PAGE_SIZE, null, null).toString();
+                writePage(messageResource.findMessagesAsRecords(0L, FIXTURE_PAGE_SIZE, null, null));
+                messageResource.getStatistics().toString();
+            }
+        }
+    }
+
+    /**
+     * Creates a page of messages like the message listener would store them (text extracted from a TextMessage,
+     * converted to a JPA entity) and the REST API would read them (converted back to a record). The last message
+     * of the page is a binary message, without message text.
+     */
+    private static MessagePage createFixturePage(JMSContext context, int iteration) throws JMSException {
+        Instant now = Instant.now();
+        ImmutableList.Builder<Message> messages = ImmutableList.builder();
+        for (int i = 0; i < FIXTURE_PAGE_SIZE - 1; i++) {
+            long id = (long) iteration * FIXTURE_PAGE_SIZE + i + 1;
+            TextMessage textMessage = context.createTextMessage(
+                    "{\"warmUpMessage\": " + id + ", \"text\": \"" + "x".repeat(i * 10) + "\"}");
+            MessageData messageData = new MessageData(now, textMessage.getText());
+            messages.add(MessageService.convertInMemory(messageData, id));
+        }
+        long binaryMessageId = (long) (iteration + 1) * FIXTURE_PAGE_SIZE;
+        messages.add(new Message(binaryMessageId, now, null));
+        return new MessagePage(messages.build(), OptionalLong.of(binaryMessageId));
+    }
+
+    private void writePage(MessagePage page) throws IOException {
+        MessageResource.convertToJson(page).toString();
+        messageRecordFormat.writeTo(
+                page, MessagePage.class, MessagePage.class, null,
+                MessageRecordFormat.APPLICATION_MESSAGE_RECORDS_TYPE, null, OutputStream.nullOutputStream());
+    }
+}
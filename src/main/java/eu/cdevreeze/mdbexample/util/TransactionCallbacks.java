@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.util;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Utility for running code after completion of the current JTA transaction, using an interposed
+ * {@link Synchronization}. This is typically used to update in-memory state (caches, counters etc.)
+ * only once it is known whether the transaction committed or rolled back.
+ * <p>
+ * Note that these callbacks run after the transaction has completed, so they cannot take part in the
+ * transaction, and exceptions thrown by them do not affect the transaction outcome.
+ *
+ * @author Chris de Vreeze
+ */
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Runs the given action after the current transaction has committed. If there is no active transaction,
+     * the action is run immediately, since the work done so far is not going to be rolled back. After a rollback
+     * (or with any other outcome) the action is not run at all.
+     */
+    public static void afterCommit(TransactionSynchronizationRegistry registry, Runnable action) {
+        afterCompletion(registry, status -> {
+            if (status == Status.STATUS_COMMITTED || status == Status.STATUS_NO_TRANSACTION) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Passes the transaction outcome (a {@link Status} value, normally STATUS_COMMITTED or STATUS_ROLLEDBACK)
+     * to the given consumer after the current transaction has completed. If there is no active transaction,
+     * the consumer is called immediately, with status STATUS_NO_TRANSACTION.
+     */
+    public static void afterCompletion(TransactionSynchronizationRegistry registry, IntConsumer statusConsumer) {
+        if (registry.getTransactionKey() == null) {
+            statusConsumer.accept(Status.STATUS_NO_TRANSACTION);
+            return;
+        }
+
+        registry.registerInterposedSynchronization(new Synchronization() {
+
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                statusConsumer.accept(status);
+            }
+        });
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response entities with gzip or deflate, if the client accepts that (header "Accept-Encoding").
+ * Entities of type "application/octet-stream" (binary message payloads) are left alone, since they are often
+ * compressed already.
+ * <p>
+ * The header is parsed as a list of content codings with optional quality values (RFC 9110). The supported coding
+ * with the highest quality value is chosen, preferring gzip on ties. A quality value of 0 means "not acceptable",
+ * and "*" stands for all codings not listed explicitly.
+ *
+ * @author Chris de Vreeze
+ */
+@Provider
+public class CompressionWriterInterceptor implements WriterInterceptor {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // In order of preference
+    private static final List<String> SUPPORTED_CONTENT_ENCODINGS = List.of("gzip", "deflate");
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        String contentEncoding = selectContentEncoding(context.getMediaType());
+        if (contentEncoding == null) {
+            context.proceed();
+            return;
+        }
+
+        context.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        // The compressed length is not known upfront
+        context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+
+        OutputStream originalStream = context.getOutputStream();
+        Deflater deflater = null;
+        DeflaterOutputStream compressingStream;
+        if (contentEncoding.equals("gzip")) {
+            compressingStream = new GZIPOutputStream(originalStream, BUFFER_SIZE);
+        } else {
+            deflater = new Deflater();
+            compressingStream = new DeflaterOutputStream(originalStream, deflater, BUFFER_SIZE);
+        }
+        context.setOutputStream(compressingStream);
+        try {
+            context.proceed();
+            // Writes the remaining compressed data, without closing the underlying stream
+            compressingStream.finish();
+        } finally {
+            context.setOutputStream(originalStream);
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private String selectContentEncoding(MediaType mediaType) {
+        if (mediaType != null && mediaType.isCompatible(MediaType.APPLICATION_OCTET_STREAM_TYPE)) {
+            return null;
+        }
+        String acceptEncoding = requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return null;
+        }
+        return selectContentEncoding(acceptEncoding);
+    }
+
+    /**
+     * Returns the supported content coding that is preferred according to the given Accept-Encoding header value,
+     * or null if none of them is acceptable.
+     */
+    static String selectContentEncoding(String acceptEncoding) {
+        Map<String, Double> qualities = new HashMap<>();
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String contentEncoding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (contentEncoding.isEmpty()) {
+                continue;
+            }
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    quality = parseQuality(parameter.substring(2));
+                }
+            }
+            qualities.put(contentEncoding, quality);
+        }
+
+        String selected = null;
+        double selectedQuality = 0.0;
+        for (String contentEncoding : SUPPORTED_CONTENT_ENCODINGS) {
+            double quality = qualities.getOrDefault(contentEncoding, qualities.getOrDefault("*", 0.0));
+            if (quality > selectedQuality) {
+                selected = contentEncoding;
+                selectedQuality = quality;
+            }
+        }
+        return selected;
+    }
+
+    private static double parseQuality(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            // Invalid quality values are treated as "not acceptable"
+            return 0.0;
+        }
+    }
+}
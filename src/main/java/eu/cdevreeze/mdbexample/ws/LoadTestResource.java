@@ -0,0 +1,226 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import com.google.common.collect.ImmutableMap;
+import eu.cdevreeze.mdbexample.model.LoadTestReport;
+import eu.cdevreeze.mdbexample.service.LoadTestRecorder;
+import eu.cdevreeze.mdbexample.service.LoadTestRunner;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.json.*;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Load test resource, for measuring the throughput and end-to-end latency of the message listeners, typically in
+ * the offline "loadtest" server configuration (see README). Only available if MicroProfile Config property
+ * "mdbexample.loadtest.enabled" is true. See LoadTestRunner and LoadTestRecorder.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+@Path("/loadtest")
+public class LoadTestResource {
+
+    /**
+     * Per message listener, the queue it consumes (the load test target) and the queue it forwards to (which is drained).
+     */
+    private static final ImmutableMap<String, List<String>> LISTENER_QUEUES = ImmutableMap.of(
+            "storing", List.of("jms/MdbExampleQueue", "jms/MdbExampleCopiedQueue"),
+            "forwarding", List.of("jms/MdbExampleDummyQueue", "jms/MdbExampleCopiedDummyQueue")
+    );
+
+    @Inject
+    private LoadTestRecorder loadTestRecorder;
+
+    @Inject
+    private LoadTestRunner loadTestRunner;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.loadtest.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.loadtest.max-message-count", defaultValue = "1000000")
+    private int maxMessageCount;
+
+    /**
+     * Starts a load test run. The request body is a JSON object with optional properties "listeners" (array of
+     * "storing" and/or "forwarding", by default both), "messageCount" (messages per listener, default 10000),
+     * "ratePerSecond" (send rate per listener, default 1000), "messageSize" (in characters or bytes, default 1024),
+     * "binary" (sending BytesMessages instead of TextMessages, default false), "producers" (concurrent producers per
+     * listener, default 1) and "keys" (number of message keys, default 0). The run ID is returned. The run remains
+     * active (counting the messages processed by the listeners) until it is stopped or replaced by the next run.
+     * <p>
+     * With "keys" greater than 0, the messages get a JMSXGroupID out of that many keys, and the report counts per
+     * listener the messages committed out of order within their key (see LoadTestRecorder). The number of keys must
+     * be at least the number of producers, since each key is sent by one producer.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startRun(JsonObject request) {
+        checkEnabled();
+
+        List<String> listeners;
+        int messageCount;
+        double ratePerSecond;
+        int messageSize;
+        boolean binary;
+        int producers;
+        int keyCount;
+        try {
+            listeners = request.containsKey("listeners") ?
+                    request.getJsonArray("listeners").getValuesAs(JsonString::getString) :
+                    LISTENER_QUEUES.keySet().asList();
+            messageCount = request.getInt("messageCount", 10000);
+            ratePerSecond = request.containsKey("ratePerSecond") ?
+                    request.getJsonNumber("ratePerSecond").doubleValue() :
+                    1000;
+            messageSize = request.getInt("messageSize", 1024);
+            binary = request.getBoolean("binary", false);
+            producers = request.getInt("producers", 1);
+            keyCount = request.getInt("keys", 0);
+        } catch (ClassCastException e) {
+            throw new BadRequestException("Expected string array property 'listeners', integer properties " +
+                    "'messageCount', 'messageSize', 'producers' and 'keys', numeric property 'ratePerSecond' and " +
+                    "boolean property 'binary'", e);
+        }
+
+        if (listeners.isEmpty() || !LISTENER_QUEUES.keySet().containsAll(listeners)) {
+            throw new BadRequestException("Property 'listeners' must contain one or more of " + LISTENER_QUEUES.keySet());
+        }
+        if (messageCount <= 0 || messageCount > maxMessageCount || ratePerSecond <= 0 || messageSize <= 0 ||
+                producers <= 0 || producers > messageCount) {
+            throw new BadRequestException("Properties 'messageCount', 'ratePerSecond', 'messageSize' and 'producers' " +
+                    "must be positive, 'messageCount' must be at most " + maxMessageCount +
+                    ", and 'producers' at most 'messageCount'");
+        }
+        if (keyCount < 0 || (keyCount > 0 && keyCount < producers)) {
+            throw new BadRequestException("Property 'keys' must be 0, or at least 'producers'");
+        }
+        // A run whose messages have all been sent is replaced; it may still be waiting for stragglers
+        if (loadTestRecorder.findActiveRunId().filter(id -> !loadTestRecorder.isSendingCompleted(id)).isPresent()) {
+            throw new ClientErrorException("A load test run is still sending messages", Response.Status.CONFLICT);
+        }
+
+        long runId = loadTestRecorder.startRun(listeners.size() * producers, messageCount, keyCount);
+
+        for (String listener : listeners) {
+            String targetQueue = LISTENER_QUEUES.get(listener).get(0);
+            String forwardQueue = LISTENER_QUEUES.get(listener).get(1);
+
+            loadTestRunner.runDrainer(runId, forwardQueue);
+            for (int i = 0; i < producers; i++) {
+                // The first producer also sends the remainder
+                int producerMessageCount = messageCount / producers + ((i == 0) ? messageCount % producers : 0);
+                loadTestRunner.runProducer(
+                        runId,
+                        targetQueue,
+                        producerMessageCount,
+                        ratePerSecond / producers,
+                        messageSize,
+                        binary,
+                        producerKeys(keyCount, producers, i));
+            }
+        }
+
+        return Response.accepted(Json.createObjectBuilder().add("runId", runId).build()).build();
+    }
+
+    /**
+     * Returns the report of the current (or last) load test run.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject getReport() {
+        checkEnabled();
+        LoadTestReport report = loadTestRecorder.getReport()
+                .orElseThrow(() -> new NotFoundException("No load test run found"));
+        return convertToJson(report);
+    }
+
+    /**
+     * Stops the current load test run. Its report remains available.
+     */
+    @POST
+    @Path("/stop")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject stopRun() {
+        checkEnabled();
+        loadTestRecorder.findActiveRunId().ifPresent(runId -> loadTestRecorder.stopRun(runId));
+        return getReport();
+    }
+
+    /**
+     * Returns the keys of the given producer: every "producers"-th key, starting at key "producerIndex".
+     */
+    private static List<String> producerKeys(int keyCount, int producers, int producerIndex) {
+        return IntStream.range(0, keyCount)
+                .filter(k -> k % producers == producerIndex)
+                .mapToObj(k -> "key-" + k)
+                .toList();
+    }
+
+    private void checkEnabled() {
+        if (!enabled) {
+            throw new NotFoundException("The load test harness is not enabled");
+        }
+    }
+
+    private static JsonObject convertToJson(LoadTestReport report) {
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        JsonArray listenerResults = Json.createArrayBuilder(
+                report.listenerResults().stream()
+                        .map(listenerResult -> convertToJson(listenerResult, objectBuilder))
+                        .toList()
+        ).build();
+
+        return objectBuilder
+                .add("runId", report.runId())
+                .add("startTime", report.startTime().toString())
+                .add("reportTime", report.reportTime().toString())
+                .add("active", report.active())
+                .add("keys", report.keyCount())
+                .add("sentCount", report.sentCount())
+                .add("sendRatePerSecond", report.sendRatePerSecond())
+                .add("drainedCount", report.drainedCount())
+                .add("listeners", listenerResults)
+                .build();
+    }
+
+    private static JsonObject convertToJson(
+            LoadTestReport.ListenerResult listenerResult, JsonObjectBuilder objectBuilder) {
+        // Method "build" resets the builder, so the builder can be reused
+        return objectBuilder
+                .add("listener", listenerResult.listenerName())
+                .add("committedCount", listenerResult.committedCount())
+                .add("rolledBackCount", listenerResult.rolledBackCount())
+                .add("outOfOrderCount", listenerResult.outOfOrderCount())
+                .add("messagesPerSecond", listenerResult.messagesPerSecond())
+                .add("p50LatencyMillis", listenerResult.p50Latency().toMillis())
+                .add("p99LatencyMillis", listenerResult.p99Latency().toMillis())
+                .add("maxLatencyMillis", listenerResult.maxLatency().toMillis())
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of messages, as an alternative to JSON for large result sets. All numbers are big-endian
+ * (as written by {@link DataOutputStream}). One message record consists of:
+ * <ul>
+ *     <li>the ID, as 8-byte long</li>
+ *     <li>the timestamp, as 8-byte long, in milliseconds since the epoch</li>
+ *     <li>the length in bytes of the UTF-8 encoded message text, as 4-byte int, or -1 if there is no message text</li>
+ *     <li>the UTF-8 encoded message text</li>
+ * </ul>
+ * A message page is encoded as the number of messages (4-byte int), followed by the message records, followed
+ * by the "nextAfter" ID (8-byte long), or -1 if there is no next page. An export is just a sequence of message
+ * records, up to the end of the stream.
+ * <p>
+ * This class is also the MessageBodyWriter of message pages in this encoding.
+ *
+ * @author Chris de Vreeze
+ */
+@Provider
+@Produces(MessageRecordFormat.APPLICATION_MESSAGE_RECORDS)
+public class MessageRecordFormat implements MessageBodyWriter<MessagePage> {
+
+    public static final String APPLICATION_MESSAGE_RECORDS = "application/x-message-records";
+
+    public static final MediaType APPLICATION_MESSAGE_RECORDS_TYPE = new MediaType("application", "x-message-records");
+
+    public static void writeMessage(Message message, DataOutputStream output) throws IOException {
+        output.writeLong(message.id());
+        output.writeLong(message.timestamp().toEpochMilli());
+        if (message.messageText() == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] text = message.messageText().getBytes(StandardCharsets.UTF_8);
+            output.writeInt(text.length);
+            output.write(text);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return MessagePage.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(
+            MessagePage page,
+            Class<?> type,
+            Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException, WebApplicationException {
+        // Not closed, since that would close the entity stream
+        DataOutputStream output = new DataOutputStream(entityStream);
+        output.writeInt(page.messages().size());
+        for (Message message : page.messages()) {
+            writeMessage(message, output);
+        }
+        output.writeLong(page.nextAfterId().orElse(-1L));
+        output.flush();
+    }
+}
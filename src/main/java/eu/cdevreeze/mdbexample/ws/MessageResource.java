@@ -17,18 +17,23 @@
 package eu.cdevreeze.mdbexample.ws;
 
 import eu.cdevreeze.mdbexample.model.Message;
+import eu.cdevreeze.mdbexample.model.MessageData;
+import eu.cdevreeze.mdbexample.model.MessagePage;
+import eu.cdevreeze.mdbexample.model.MessageStatisticsSnapshot;
 import eu.cdevreeze.mdbexample.service.MessageService;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
-import jakarta.json.Json;
-import jakarta.json.JsonArray;
-import jakarta.json.JsonObjectBuilder;
-import jakarta.ws.rs.GET;
-import jakarta.ws.rs.Path;
-import jakarta.ws.rs.Produces;
-import jakarta.ws.rs.core.MediaType;
+import jakarta.json.*;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.*;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Message page resource.
@@ -39,22 +44,315 @@ import java.util.List;
 @Path("/message")
 public class MessageResource {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final MediaType APPLICATION_NDJSON_TYPE = new MediaType("application", "x-ndjson");
+
     @Inject
     private MessageService messageService;
 
+    /**
+     * Returns one page of messages, ordered by ID, using keyset pagination. Query parameter "after" is the
+     * ID after which the page starts (the "nextAfter" value of the previous page), and "limit" is the
+     * page size (capped at MessageService.MAX_PAGE_SIZE). Optional query parameters "from" (inclusive)
+     * and "to" (exclusive) restrict the creation time window, as ISO-8601 instants.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject findMessages(
+            @QueryParam("after") @DefaultValue("0") long afterId,
+            @QueryParam("limit") @DefaultValue("100") int limit,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to) {
+        if (limit <= 0) {
+            throw new BadRequestException("Query parameter 'limit' must be positive");
+        }
+
+        MessagePage page = messageService.findMessages(afterId, parseInstant(from), parseInstant(to), limit);
+        return convertToJson(page);
+    }
+
+    /**
+     * Like method "findMessages", but returning the page in the compact binary encoding of
+     * {@link MessageRecordFormat}, if the client asks for that media type.
+     */
+    @GET
+    @Produces(MessageRecordFormat.APPLICATION_MESSAGE_RECORDS)
+    public MessagePage findMessagesAsRecords(
+            @QueryParam("after") @DefaultValue("0") long afterId,
+            @QueryParam("limit") @DefaultValue("100") int limit,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to) {
+        if (limit <= 0) {
+            throw new BadRequestException("Query parameter 'limit' must be positive");
+        }
+
+        return messageService.findMessages(afterId, parseInstant(from), parseInstant(to), limit);
+    }
+
+    /**
+     * Full-text search on the message text, returning one page of matching messages, ordered by ID, using keyset
+     * pagination like method "findMessages". Query parameter "q" is the search query, in PostgreSQL web search
+     * syntax (e.g. {@code order "payment failed" -test}).
+     * <p>
+     * Only message texts are searched, so binary messages are never found. Long message texts compressed by
+     * PostgreSQL (TOAST) are searchable like any other. If the database lacks the generated "search_vector" column
+     * (see README), which JPA schema generation does not create, the response has status 501 (Not Implemented).
+     */
+    @GET
+    @Path("/search")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject searchMessages(
+            @QueryParam("q") String searchQuery,
+            @QueryParam("after") @DefaultValue("0") long afterId,
+            @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (searchQuery == null || searchQuery.isBlank()) {
+            throw new BadRequestException("Query parameter 'q' must be non-blank");
+        }
+        if (limit <= 0) {
+            throw new BadRequestException("Query parameter 'limit' must be positive");
+        }
+
+        MessagePage page = messageService.searchMessages(searchQuery, afterId, limit)
+                .orElseThrow(() -> new ServerErrorException(
+                        "Full-text search is not available: column 'search_vector' is missing",
+                        Response.Status.NOT_IMPLEMENTED));
+        return convertToJson(page);
+    }
+
+    /**
+     * Returns the message statistics of this application instance (counts and sizes per minute and per hour,
+     * and the size distribution), which are maintained in memory, so they are cheap to query.
+     */
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject getStatistics() {
+        MessageStatisticsSnapshot statistics = messageService.getStatistics();
+
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        return Json.createObjectBuilder()
+                .add("since", statistics.since().toString())
+                .add("totalCount", statistics.totalCount())
+                .add("totalSize", statistics.totalSize())
+                .add("maxSize", statistics.maxSize())
+                .add("perMinute", convertToJson(statistics.perMinute(), objectBuilder))
+                .add("perHour", convertToJson(statistics.perHour(), objectBuilder))
+                .add("sizeDistribution", Json.createArrayBuilder(
+                        statistics.sizeDistribution().stream()
+                                .map(sizeClass -> objectBuilder
+                                        .add("maxSize", sizeClass.maxSize())
+                                        .add("count", sizeClass.count())
+                                        .build())
+                                .toList()))
+                .build();
+    }
+
+    @GET
+    @Path("/{id: [0-9]+}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject findMessage(@PathParam("id") long id) {
+        Message message = messageService.findMessage(id)
+                .orElseThrow(() -> new NotFoundException("Message " + id + " not found"));
+        return convertToJson(message, Json.createObjectBuilder());
+    }
+
+    /**
+     * Returns the binary payload of the message with the given ID, streaming it from the database to the response.
+     * Only messages received as BytesMessage have such a payload.
+     */
+    @GET
+    @Path("/{id: [0-9]+}/payload")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response findMessagePayload(@PathParam("id") long id) {
+        long payloadLength = messageService.findPayloadLength(id)
+                .orElseThrow(() -> new NotFoundException("Message " + id + " has no binary payload"));
+
+        StreamingOutput output = outputStream -> messageService.writePayload(id, outputStream);
+        return Response.ok(output).header(HttpHeaders.CONTENT_LENGTH, payloadLength).build();
+    }
+
+    /**
+     * Exports all messages (optionally restricted like method "findMessages", but without any page size limit),
+     * streaming them from the database directly to the response. Depending on the Accept header, the response
+     * is either one JSON array, NDJSON (one JSON object per line), or a sequence of binary message records
+     * (see {@link MessageRecordFormat}).
+     */
     @GET
+    @Path("/export")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_NDJSON, MessageRecordFormat.APPLICATION_MESSAGE_RECORDS})
+    public Response exportMessages(
+            @QueryParam("after") @DefaultValue("0") long afterId,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @Context Request request) {
+        Optional<Instant> fromTime = parseInstant(from);
+        Optional<Instant> toTime = parseInstant(to);
+
+        List<Variant> variants = Variant.mediaTypes(
+                MediaType.APPLICATION_JSON_TYPE,
+                APPLICATION_NDJSON_TYPE,
+                MessageRecordFormat.APPLICATION_MESSAGE_RECORDS_TYPE).build();
+        Variant variant = request.selectVariant(variants);
+        if (variant == null) {
+            return Response.notAcceptable(variants).build();
+        }
+
+        // The streaming happens when the response entity is written, and the export transaction is
+        // the one of the MessageService call made from within the StreamingOutput
+        MediaType mediaType = variant.getMediaType();
+        StreamingOutput output;
+        if (mediaType.isCompatible(APPLICATION_NDJSON_TYPE)) {
+            output = outputStream -> exportAsNdjson(afterId, fromTime, toTime, outputStream);
+        } else if (mediaType.isCompatible(MessageRecordFormat.APPLICATION_MESSAGE_RECORDS_TYPE)) {
+            output = outputStream -> exportAsRecords(afterId, fromTime, toTime, outputStream);
+        } else {
+            output = outputStream -> exportAsJsonArray(afterId, fromTime, toTime, outputStream);
+        }
+        return Response.ok(output, variant).build();
+    }
+
+    /**
+     * Bulk insert of messages. The request body is a JSON array of objects with a "messageText" string
+     * and an optional ISO-8601 "timestamp" (defaulting to the current time). All messages are stored
+     * in one transaction, using JDBC batching. The stored messages (with their IDs) are returned.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public JsonArray findAllMessages() {
-        List<Message> messages = messageService.findAllMessages();
+    public JsonArray createMessages(JsonArray jsonMessages) {
+        Instant now = Instant.now();
+        List<MessageData> messageDataList =
+                jsonMessages.stream().map(jsonMessage -> convertToMessageData(jsonMessage, now)).toList();
+
+        List<Message> messages = messageService.createMessages(messageDataList);
+
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        return Json.createArrayBuilder(
+                messages.stream().map(msg -> convertToJson(msg, objectBuilder)).toList()
+        ).build();
+    }
+
+    private void exportAsJsonArray(
+            long afterId,
+            Optional<Instant> fromTime,
+            Optional<Instant> toTime,
+            OutputStream outputStream) {
+        try (JsonGenerator generator = Json.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            messageService.exportMessages(afterId, fromTime, toTime, msg ->
+                    generator.writeStartObject()
+                            .write("id", msg.id())
+                            .write("timestamp", msg.timestamp().toString())
+                            .write("messageText", convertMessageTextToJson(msg))
+                            .writeEnd());
+            generator.writeEnd();
+        }
+    }
+
+    private void exportAsNdjson(
+            long afterId,
+            Optional<Instant> fromTime,
+            Optional<Instant> toTime,
+            OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        try {
+            messageService.exportMessages(afterId, fromTime, toTime, msg -> {
+                try {
+                    writer.write(convertToJson(msg, objectBuilder).toString());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
 
+    private void exportAsRecords(
+            long afterId,
+            Optional<Instant> fromTime,
+            Optional<Instant> toTime,
+            OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        try {
+            messageService.exportMessages(afterId, fromTime, toTime, msg -> {
+                try {
+                    MessageRecordFormat.writeMessage(msg, output);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        output.flush();
+    }
+
+    // Public for the startup warm-up and the benchmarks (see src/jmh)
+    public static JsonObject convertToJson(MessagePage page) {
         JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        JsonArray jsonMessages = Json.createArrayBuilder(
+                page.messages().stream().map(msg -> convertToJson(msg, objectBuilder)).toList()
+        ).build();
+
+        JsonObjectBuilder pageBuilder = Json.createObjectBuilder().add("messages", jsonMessages);
+        page.nextAfterId().ifPresent(id -> pageBuilder.add("nextAfter", id));
+        return pageBuilder.build();
+    }
+
+    private static JsonArray convertToJson(
+            List<MessageStatisticsSnapshot.PeriodCount> periodCounts,
+            JsonObjectBuilder objectBuilder) {
         return Json.createArrayBuilder(
-                messages.stream().map(msg ->
-                        objectBuilder
-                                .add("id", msg.id())
-                                .add("timestamp", msg.timestamp().toString())
-                                .add("messageText", msg.messageText())
-                                .build()).toList()
+                periodCounts.stream()
+                        .map(periodCount -> objectBuilder
+                                .add("start", periodCount.start().toString())
+                                .add("count", periodCount.count())
+                                .add("totalSize", periodCount.totalSize())
+                                .build())
+                        .toList()
         ).build();
     }
+
+    private static JsonObject convertToJson(Message msg, JsonObjectBuilder objectBuilder) {
+        // Method "build" resets the builder, so the builder can be reused
+        return objectBuilder
+                .add("id", msg.id())
+                .add("timestamp", msg.timestamp().toString())
+                .add("messageText", convertMessageTextToJson(msg))
+                .build();
+    }
+
+    private static JsonValue convertMessageTextToJson(Message msg) {
+        // Messages with a binary payload have no message text (see method "findMessagePayload")
+        return (msg.messageText() == null) ? JsonValue.NULL : Json.createValue(msg.messageText());
+    }
+
+    private static Optional<Instant> parseInstant(String value) {
+        try {
+            return Optional.ofNullable(value).map(Instant::parse);
+        } catch (DateTimeException e) {
+            throw new BadRequestException("Expected ISO-8601 instant, but got '" + value + "'", e);
+        }
+    }
+
+    private static MessageData convertToMessageData(JsonValue jsonValue, Instant defaultTimestamp) {
+        if (!(jsonValue instanceof JsonObject jsonObject) ||
+                !(jsonObject.get("messageText") instanceof JsonString messageText)) {
+            throw new BadRequestException("Expected JSON object with string property 'messageText'");
+        }
+
+        try {
+            Instant timestamp = jsonObject.containsKey("timestamp") ?
+                    Instant.parse(jsonObject.getString("timestamp")) :
+                    defaultTimestamp;
+            return new MessageData(timestamp, messageText.getString());
+        } catch (ClassCastException | DateTimeException e) {
+            throw new BadRequestException("Expected ISO-8601 string property 'timestamp'", e);
+        }
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import eu.cdevreeze.mdbexample.model.QueueStatus;
+import eu.cdevreeze.mdbexample.service.QueueMonitor;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.time.Instant;
+
+/**
+ * Queue status resource, showing the depth and oldest message age of the monitored queues, as found by the
+ * most recent check of the QueueMonitor. A queue whose status is unknown (failed or stale check) has status
+ * "unknown" and no depth, rather than depth 0.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+@Path("/queues")
+public class QueueResource {
+
+    @Inject
+    private QueueMonitor queueMonitor;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonArray getQueueStatuses() {
+        Instant now = Instant.now();
+        JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+        return Json.createArrayBuilder(
+                queueMonitor.getQueueStatuses().values().stream()
+                        .map(queueStatus -> convertToJson(
+                                queueStatus, queueMonitor.isKnown(queueStatus, now), now, objectBuilder))
+                        .toList()
+        ).build();
+    }
+
+    private static JsonObject convertToJson(
+            QueueStatus queueStatus,
+            boolean known,
+            Instant now,
+            JsonObjectBuilder objectBuilder) {
+        // Method "build" resets the builder, so the builder can be reused
+        objectBuilder
+                .add("queue", queueStatus.queueName())
+                .add("status", known ? "known" : "unknown")
+                .add("depthCapped", queueStatus.depthCapped())
+                .add("checkTime", queueStatus.checkTime().toString());
+        queueStatus.depth().ifPresent(depth -> objectBuilder.add("depth", depth));
+        queueStatus.oldestMessageTimestamp().ifPresent(timestamp -> objectBuilder
+                .add("oldestMessageTimestamp", timestamp.toString())
+                .add("oldestMessageAgeMillis", queueStatus.getOldestMessageAge(now).orElseThrow().toMillis()));
+        queueStatus.errorMessage().ifPresent(msg -> objectBuilder.add("errorMessage", msg));
+        return objectBuilder.build();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2025-2025 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.mdbexample.ws;
+
+import eu.cdevreeze.mdbexample.model.ReplayJob;
+import eu.cdevreeze.mdbexample.model.ReplayJobStatus;
+import eu.cdevreeze.mdbexample.service.ReplayRunner;
+import eu.cdevreeze.mdbexample.service.ReplayService;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.json.*;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Replay job resource, for replaying stored messages (back) to a queue. See ReplayService.
+ *
+ * @author Chris de Vreeze
+ */
+@RequestScoped
+@Path("/replay")
+public class ReplayResource {
+
+    @Inject
+    private ReplayService replayService;
+
+    @Inject
+    private ReplayRunner replayRunner;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.replay.batch-size", defaultValue = "500")
+    private int defaultBatchSize;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.replay.rate-per-second", defaultValue = "1000")
+    private double defaultRatePerSecond;
+
+    @Inject
+    @ConfigProperty(name = "mdbexample.replay.max-concurrency", defaultValue = "8")
+    private int maxConcurrency;
+
+    /**
+     * Starts replaying stored messages. The request body is a JSON object with string property "destination"
+     * (the JNDI name of the queue), and optional properties "afterId" and "toId" (the ID range (afterId, toId],
+     * by default all messages), "fromTime" and "toTime" (an ISO-8601 creation time window [fromTime, toTime)),
+     * "batchSize" (messages per transaction), "ratePerSecond" (total rate limit) and "concurrency" (number of
+     * jobs the ID range is split over). The created jobs are returned.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startReplay(JsonObject request) {
+        String destination = request.getString("destination", null);
+        if (destination == null || !replayService.isAllowedDestination(destination)) {
+            throw new BadRequestException("Expected string property 'destination' with an allowed replay destination");
+        }
+
+        try {
+            int batchSize = request.getInt("batchSize", defaultBatchSize);
+            double ratePerSecond = request.containsKey("ratePerSecond") ?
+                    request.getJsonNumber("ratePerSecond").doubleValue() :
+                    defaultRatePerSecond;
+            int concurrency = request.getInt("concurrency", 1);
+            if (batchSize <= 0 || ratePerSecond <= 0 || concurrency <= 0 || concurrency > maxConcurrency) {
+                throw new BadRequestException("Properties 'batchSize', 'ratePerSecond' and 'concurrency' must be " +
+                        "positive, and 'concurrency' must be at most " + maxConcurrency);
+            }
+
+            List<ReplayJob> replayJobs = replayService.createReplayJobs(
+                    destination,
+                    request.containsKey("afterId") ? request.getJsonNumber("afterId").longValueExact() : 0L,
+                    request.containsKey("toId") ?
+                            Optional.of(request.getJsonNumber("toId").longValueExact()) :
+                            Optional.empty(),
+                    parseInstant(request, "fromTime"),
+                    parseInstant(request, "toTime"),
+                    batchSize,
+                    ratePerSecond,
+                    concurrency
+            );
+
+            // The jobs have been committed, so the asynchronous runners can see them
+            replayJobs.forEach(replayJob -> replayRunner.runReplayJob(replayJob.id()));
+
+            JsonObjectBuilder objectBuilder = Json.createObjectBuilder();
+            JsonArray jsonReplayJobs = Json.createArrayBuilder(
+                    replayJobs.stream().map(replayJob -> convertToJson(replayJob, objectBuilder)).toList()
+            ).build();
+            return Response.accepted(jsonReplayJobs).build();
+        } catch (ClassCastException | ArithmeticException e) {
+            throw new BadRequestException("Expected integer properties 'afterId', 'toId', 'batchSize' and " +
+                    "'concurrency', and numeric property 'ratePerSecond'", e);
+        }
+    }
+
+    /**
+     * Returns the replay job, showing its progress.
+     */
+    @GET
+    @Path("/{id: [0-9]+}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject findReplayJob(@PathParam("id") long id) {
+        ReplayJob replayJob = replayService.findReplayJob(id)
+                .orElseThrow(() -> new NotFoundException("Replay job " + id + " not found"));
+        return convertToJson(replayJob, Json.createObjectBuilder());
+    }
+
+    /**
+     * Cancels the replay job. The batch being replayed (if any) is completed first.
+     */
+    @POST
+    @Path("/{id: [0-9]+}/cancel")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject cancelReplayJob(@PathParam("id") long id) {
+        ReplayJob replayJob = replayService.updateStatus(id, ReplayJobStatus.CANCELLED, Optional.empty())
+                .orElseThrow(() -> new NotFoundException("Replay job " + id + " not found"));
+        return convertToJson(replayJob, Json.createObjectBuilder());
+    }
+
+    /**
+     * Resumes the (failed or cancelled) replay job from its checkpoint. A runner is only started if the job was
+     * not running yet, so resuming a running job does not start a second runner for it. A job interrupted by a
+     * server restart still has status RUNNING, so it has to be cancelled before it can be resumed.
+     */
+    @POST
+    @Path("/{id: [0-9]+}/resume")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject resumeReplayJob(@PathParam("id") long id) {
+        ReplayService.ResumedReplayJob resumedReplayJob = replayService.resumeReplayJob(id)
+                .orElseThrow(() -> new NotFoundException("Replay job " + id + " not found"));
+        ReplayJob replayJob = resumedReplayJob.replayJob();
+        // The status change has been committed, so the asynchronous runner can see it
+        if (replayJob.status() == ReplayJobStatus.RUNNING && !resumedReplayJob.wasRunning()) {
+            replayRunner.runReplayJob(id);
+        }
+        return convertToJson(replayJob, Json.createObjectBuilder());
+    }
+
+    private static JsonObject convertToJson(ReplayJob replayJob, JsonObjectBuilder objectBuilder) {
+        // Method "build" resets the builder, so the builder can be reused
+        objectBuilder
+                .add("id", replayJob.id())
+                .add("destination", replayJob.destination())
+                .add("afterId", replayJob.startAfterId())
+                .add("toId", replayJob.toId())
+                .add("checkpointId", replayJob.checkpointId())
+                .add("replayedCount", replayJob.replayedCount())
+                .add("batchSize", replayJob.batchSize())
+                .add("ratePerSecond", replayJob.ratePerSecond())
+                .add("status", replayJob.status().name())
+                .add("creationTime", replayJob.creationTime().toString())
+                .add("updateTime", replayJob.updateTime().toString());
+        replayJob.fromTime().ifPresent(t -> objectBuilder.add("fromTime", t.toString()));
+        replayJob.toTime().ifPresent(t -> objectBuilder.add("toTime", t.toString()));
+        replayJob.errorMessage().ifPresent(msg -> objectBuilder.add("errorMessage", msg));
+        return objectBuilder.build();
+    }
+
+    private static Optional<Instant> parseInstant(JsonObject jsonObject, String propertyName) {
+        try {
+            return Optional.ofNullable(jsonObject.getString(propertyName, null)).map(Instant::parse);
+        } catch (DateTimeException e) {
+            throw new BadRequestException("Expected ISO-8601 string property '" + propertyName + "'", e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+# Executed by EclipseLink one line at a time: one statement per line, without terminating semicolon.
+# On Derby, EclipseLink takes a sequence value as the last ID of the allocated block, so a sequence with
+# increment 50 must start with (at least) 50.
+CREATE SEQUENCE message_id_seq AS BIGINT START WITH 50 INCREMENT BY 50
+CREATE TABLE message (id BIGINT NOT NULL PRIMARY KEY, creation_time TIMESTAMP NOT NULL, message_text CLOB)
+CREATE INDEX message_creation_time_idx ON message (creation_time)
+CREATE TABLE message_payload (message_id BIGINT NOT NULL PRIMARY KEY, content_length BIGINT NOT NULL, payload BLOB NOT NULL)
+CREATE SEQUENCE message_outbox_id_seq AS BIGINT START WITH 50 INCREMENT BY 50
+CREATE TABLE message_outbox (id BIGINT NOT NULL PRIMARY KEY, message_id BIGINT, creation_time TIMESTAMP, message_text CLOB, destination VARCHAR(255))
+CREATE TABLE processed_message (message_key VARCHAR(255) NOT NULL PRIMARY KEY, processing_time TIMESTAMP)
+CREATE SEQUENCE replay_job_id_seq AS BIGINT START WITH 1 INCREMENT BY 1
+CREATE TABLE replay_job (id BIGINT NOT NULL PRIMARY KEY, destination VARCHAR(255) NOT NULL, start_after_id BIGINT NOT NULL, to_id BIGINT NOT NULL, from_time TIMESTAMP, to_time TIMESTAMP, checkpoint_id BIGINT NOT NULL, replayed_count BIGINT NOT NULL, batch_size INTEGER NOT NULL, rate_per_second DOUBLE NOT NULL, status VARCHAR(255) NOT NULL, error_message VARCHAR(255), creation_time TIMESTAMP NOT NULL, update_time TIMESTAMP NOT NULL)